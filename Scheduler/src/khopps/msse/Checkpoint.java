@@ -0,0 +1,200 @@
+package khopps.msse;
+
+import java.io.BufferedInputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+
+/**
+ * Checkpoint is a snapshot of the Scheduler's search frontier. It records the
+ * choice index taken at each depth of the search, the schedule prefix those
+ * choices produced, the signature of the Workload being scheduled, and the
+ * options the search was run with, so that a later run can resume the search
+ * exactly where it left off.
+ *
+ * @author khopps
+ *
+ */
+public class Checkpoint
+{
+	private static final int MAGIC = 0x4B534350; // "KSCP"
+	private static final int VERSION = 3;
+	public static final int IDLE_ID = -1; // task id recorded for Idle tasks.
+
+	// mode bits, one for each search option that changes the search
+	public static final int INSERTED_IDLE_TIME = 1;
+
+	private final long m_signature;
+	private final long m_hyperperiod;
+	private final int m_mode;
+	private final long m_nodes;
+	private final int[] m_choices;
+	private final int[] m_taskIds;
+	private final long[] m_starts;
+
+	/**
+	 * @param signature
+	 *            is the Workload signature.
+	 * @param hyperperiod
+	 *            is the length of the schedule being searched for.
+	 * @param mode
+	 *            is the search options in effect, as mode bits.
+	 * @param nodes
+	 *            is the number of search nodes explored so far.
+	 * @param choices
+	 *            is the choice index taken at each depth.
+	 * @param taskIds
+	 *            is the index within the Workload of the task scheduled at
+	 *            each depth, or IDLE_ID.
+	 * @param starts
+	 *            is the start time of the task scheduled at each depth.
+	 */
+	public Checkpoint(long signature, long hyperperiod, int mode, long nodes, int[] choices, int[] taskIds,
+			long[] starts)
+	{
+		if (choices.length != taskIds.length || choices.length != starts.length)
+			throw new IllegalArgumentException("Checkpoint arrays must all have the same length");
+
+		m_signature = signature;
+		m_hyperperiod = hyperperiod;
+		m_mode = mode;
+		m_nodes = nodes;
+		m_choices = choices;
+		m_taskIds = taskIds;
+		m_starts = starts;
+	}
+
+	public long signature()
+	{
+		return m_signature;
+	}
+
+	public long hyperperiod()
+	{
+		return m_hyperperiod;
+	}
+
+	/**
+	 * @return the search options in effect, as mode bits. A search can only be
+	 *         continued with the same options.
+	 */
+	public int mode()
+	{
+		return m_mode;
+	}
+
+	public long nodes()
+	{
+		return m_nodes;
+	}
+
+	/**
+	 * @return the number of decisions in the schedule prefix.
+	 */
+	public int depth()
+	{
+		return m_choices.length;
+	}
+
+	public int choice(int depth)
+	{
+		return m_choices[depth];
+	}
+
+	public int taskId(int depth)
+	{
+		return m_taskIds[depth];
+	}
+
+	public long start(int depth)
+	{
+		return m_starts[depth];
+	}
+
+	public void write(DataOutput out) throws IOException
+	{
+		out.writeInt(MAGIC);
+		out.writeInt(VERSION);
+		out.writeLong(m_signature);
+		out.writeLong(m_hyperperiod);
+		out.writeInt(m_mode);
+		out.writeLong(m_nodes);
+		out.writeInt(m_choices.length);
+		for (int i = 0; i < m_choices.length; ++i)
+		{
+			out.writeInt(m_choices[i]);
+			out.writeInt(m_taskIds[i]);
+			out.writeLong(m_starts[i]);
+		}
+	}
+
+	public static Checkpoint read(DataInput in) throws IOException
+	{
+		if (in.readInt() != MAGIC)
+			throw new IOException("Not a scheduler checkpoint");
+
+		int version = in.readInt();
+		if (version != VERSION)
+			throw new IOException("Unsupported checkpoint version " + version);
+
+		long signature = in.readLong();
+		long hyperperiod = in.readLong();
+		int mode = in.readInt();
+		long nodes = in.readLong();
+		int depth = in.readInt();
+		if (depth < 0)
+			throw new IOException("Corrupt checkpoint depth " + depth);
+
+		int[] choices = new int[depth];
+		int[] taskIds = new int[depth];
+		long[] starts = new long[depth];
+		for (int i = 0; i < depth; ++i)
+		{
+			choices[i] = in.readInt();
+			taskIds[i] = in.readInt();
+			starts[i] = in.readLong();
+		}
+
+		Checkpoint result = new Checkpoint(signature, hyperperiod, mode, nodes, choices, taskIds, starts);
+		return result;
+	}
+
+	public static Checkpoint read(File file) throws IOException
+	{
+		DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+		try
+		{
+			return read(in);
+		}
+		finally
+		{
+			in.close();
+		}
+	}
+
+	@Override
+	public String toString()
+	{
+		StringBuffer sb = new StringBuffer();
+
+		sb.append('{');
+		sb.append("signature=");
+		sb.append(Long.toHexString(m_signature));
+		sb.append(", hyperperiod=");
+		sb.append(m_hyperperiod);
+		sb.append(", mode=");
+		sb.append(m_mode);
+		sb.append(", nodes=");
+		sb.append(m_nodes);
+		sb.append(", depth=");
+		sb.append(m_choices.length);
+		sb.append('}');
+
+		String result = sb.toString();
+		return result;
+	}
+
+}
@@ -0,0 +1,191 @@
+package khopps.msse;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+
+/**
+ * Checkpointer periodically saves the Scheduler's search frontier to a file.
+ * The Scheduler hands it a Checkpoint whenever one is due, and a background
+ * thread writes it out, so the search thread never waits on the disk. If the
+ * writer falls behind, only the most recent Checkpoint is kept.
+ *
+ * @author khopps
+ *
+ */
+public class Checkpointer
+{
+	private final File m_file;
+	private final long m_intervalMillis;
+	private long m_nextDue;
+	private Checkpoint m_pending = null;
+	private boolean m_writing = false;
+	private boolean m_closed = false;
+	private IOException m_failure = null;
+	private Thread m_writer = null;
+
+	/**
+	 * @param file
+	 *            is where the checkpoint is kept.
+	 * @param intervalMillis
+	 *            is the minimum time between checkpoints.
+	 */
+	public Checkpointer(File file, long intervalMillis)
+	{
+		m_file = file;
+		m_intervalMillis = intervalMillis;
+		m_nextDue = System.currentTimeMillis() + intervalMillis;
+	}
+
+	public File file()
+	{
+		return m_file;
+	}
+
+	/**
+	 * @return true if enough time has passed that another checkpoint should be
+	 *         taken.
+	 */
+	public boolean isDue()
+	{
+		boolean result = false;
+
+		long now = System.currentTimeMillis();
+		if (now >= m_nextDue)
+		{
+			m_nextDue = now + m_intervalMillis;
+			result = true;
+		}
+
+		return result;
+	}
+
+	/**
+	 * Queue a checkpoint to be written. This returns immediately; any
+	 * checkpoint still waiting to be written is replaced.
+	 *
+	 * @param checkpoint
+	 */
+	public synchronized void submit(Checkpoint checkpoint)
+	{
+		if (m_closed)
+			throw new IllegalStateException("Checkpointer is closed");
+
+		m_pending = checkpoint;
+		if (m_writer == null)
+		{
+			m_writer = new Thread(new Runnable()
+			{
+				@Override
+				public void run()
+				{
+					writeLoop();
+				}
+			}, "Checkpointer " + m_file.getName());
+			m_writer.setDaemon(true);
+			m_writer.start();
+		}
+		notifyAll();
+	}
+
+	/**
+	 * Wait for any queued checkpoint to be written and stop the writer thread.
+	 *
+	 * @throws IOException
+	 *             if any checkpoint could not be written.
+	 */
+	public void close() throws IOException
+	{
+		synchronized (this)
+		{
+			m_closed = true;
+			notifyAll();
+			while (m_pending != null || m_writing)
+			{
+				try
+				{
+					wait();
+				}
+				catch (InterruptedException e)
+				{
+					Thread.currentThread().interrupt();
+					break;
+				}
+			}
+		}
+
+		if (m_failure != null)
+			throw m_failure;
+	}
+
+	private void writeLoop()
+	{
+		while (true)
+		{
+			Checkpoint checkpoint;
+			synchronized (this)
+			{
+				while (m_pending == null && !m_closed)
+				{
+					try
+					{
+						wait();
+					}
+					catch (InterruptedException e)
+					{
+						return;
+					}
+				}
+
+				if (m_pending == null)
+					return;
+
+				checkpoint = m_pending;
+				m_pending = null;
+				m_writing = true;
+			}
+
+			try
+			{
+				write(checkpoint);
+			}
+			catch (IOException e)
+			{
+				m_failure = e;
+			}
+			finally
+			{
+				synchronized (this)
+				{
+					m_writing = false;
+					notifyAll();
+				}
+			}
+		}
+	}
+
+	/*
+	 * The checkpoint is written to a temporary file and then renamed, so a
+	 * crash in the middle of a write leaves the previous checkpoint intact.
+	 */
+	private void write(Checkpoint checkpoint) throws IOException
+	{
+		File temp = new File(m_file.getPath() + ".tmp");
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp)));
+		try
+		{
+			checkpoint.write(out);
+		}
+		finally
+		{
+			out.close();
+		}
+		Files.move(temp.toPath(), m_file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+				StandardCopyOption.ATOMIC_MOVE);
+	}
+
+}
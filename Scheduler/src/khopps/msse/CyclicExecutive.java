@@ -0,0 +1,285 @@
+package khopps.msse;
+
+import java.util.Map;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * CyclicExecutive runs a schedule from Scheduler.makeSchedule(). Each Task is
+ * bound to a Runnable by name, and the jobs are released in schedule order,
+ * one hyperperiod after another, on a dedicated thread.
+ *
+ * A release is timed with System.nanoTime(): the thread parks until it is
+ * close to the release time and spins for the rest. For every job, the
+ * executive records the release jitter (how late the job started), any
+ * overrun of the task's duration, and any deadline miss, each in a
+ * LatencyHistogram per task. Everything is laid out before the thread
+ * starts, so the dispatch loop does no allocation.
+ *
+ * @author khopps
+ *
+ */
+public class CyclicExecutive
+{
+	private static final long DEFAULT_SPIN_NANOS = 50000;
+	private static final long START_LEAD_NANOS = 10000000; // from start() to the first release
+
+	private final Task[] m_tasks;
+	private final long m_hyperperiodNanos;
+
+	// one entry per job in the hyperperiod, in release order
+	private final long[] m_releaseNanos;
+	private final long[] m_budgetNanos;
+	private final long[] m_deadlineNanos;
+	private final int[] m_taskIds;
+	private final Runnable[] m_runnables;
+
+	// one entry per task
+	private final LatencyHistogram[] m_jitter;
+	private final LatencyHistogram[] m_overrun;
+	private final LatencyHistogram[] m_lateness;
+
+	private long m_spinNanos = DEFAULT_SPIN_NANOS;
+	private volatile boolean m_running = false;
+	private volatile long m_cyclesCompleted = 0;
+	private volatile Throwable m_failure = null;
+	private Thread m_thread = null;
+
+	/**
+	 * @param workload
+	 * @param schedule
+	 *            is a schedule for the workload.
+	 * @param bindings
+	 *            maps each task name to the code to run for it.
+	 * @param tickNanos
+	 *            is the length of one unit of schedule time, in nanoseconds.
+	 * @throws IllegalArgumentException
+	 *             if the schedule is not correct for the workload, or a task
+	 *             has no binding.
+	 */
+	public CyclicExecutive(Workload workload, Task[] schedule, Map<String, Runnable> bindings, long tickNanos)
+	{
+		DispatchTableCompiler.verify(workload, schedule);
+
+		m_tasks = workload.tasks();
+		m_hyperperiodNanos = Math.multiplyExact(Scheduler.hyperperiod(m_tasks), tickNanos);
+
+		JobOrder order = new JobOrder(workload, schedule);
+		int numJobs = order.size();
+
+		m_releaseNanos = new long[numJobs];
+		m_budgetNanos = new long[numJobs];
+		m_deadlineNanos = new long[numJobs];
+		m_taskIds = new int[numJobs];
+		m_runnables = new Runnable[numJobs];
+
+		for (int job = 0; job < numJobs; ++job)
+		{
+			Task task = m_tasks[order.taskId(job)];
+			Runnable runnable = bindings.get(task.name());
+			if (runnable == null)
+				throw new IllegalArgumentException("No Runnable is bound to task " + task.name());
+
+			long start = order.start(job);
+			long periodStart = (start / task.period()) * task.period();
+			m_releaseNanos[job] = start * tickNanos;
+			m_budgetNanos[job] = task.duration() * tickNanos;
+			m_deadlineNanos[job] = (periodStart + task.deadline()) * tickNanos;
+			m_taskIds[job] = order.taskId(job);
+			m_runnables[job] = runnable;
+		}
+
+		m_jitter = new LatencyHistogram[m_tasks.length];
+		m_overrun = new LatencyHistogram[m_tasks.length];
+		m_lateness = new LatencyHistogram[m_tasks.length];
+		for (int i = 0; i < m_tasks.length; ++i)
+		{
+			m_jitter[i] = new LatencyHistogram();
+			m_overrun[i] = new LatencyHistogram();
+			m_lateness[i] = new LatencyHistogram();
+		}
+	}
+
+	/**
+	 * @param spinNanos
+	 *            is how long before a release the thread stops parking and
+	 *            starts spinning.
+	 */
+	public void setSpinNanos(long spinNanos)
+	{
+		m_spinNanos = spinNanos;
+	}
+
+	/**
+	 * Start running the schedule on a new thread. The first hyperperiod begins
+	 * a fixed lead time from now, giving the thread time to get going.
+	 *
+	 * @param numCycles
+	 *            is the number of hyperperiods to run, or 0 to run until
+	 *            stop() is called.
+	 */
+	public synchronized void start(final long numCycles)
+	{
+		if (m_thread != null)
+			throw new IllegalStateException("CyclicExecutive has already been started");
+
+		final long origin = System.nanoTime() + START_LEAD_NANOS;
+		m_running = true;
+		m_thread = new Thread(new Runnable()
+		{
+			@Override
+			public void run()
+			{
+				try
+				{
+					dispatch(origin, numCycles);
+				}
+				catch (Throwable t)
+				{
+					m_failure = t;
+				}
+				finally
+				{
+					m_running = false;
+				}
+			}
+		}, "CyclicExecutive");
+		m_thread.setPriority(Thread.MAX_PRIORITY);
+		m_thread.start();
+	}
+
+	/**
+	 * Ask the executive to stop once the current job finishes.
+	 */
+	public void stop()
+	{
+		m_running = false;
+		LockSupport.unpark(m_thread);
+	}
+
+	/**
+	 * Wait for the executive to finish its cycles or stop.
+	 */
+	public void join() throws InterruptedException
+	{
+		if (m_thread != null)
+			m_thread.join();
+	}
+
+	public boolean isRunning()
+	{
+		return m_running;
+	}
+
+	/**
+	 * @return the exception thrown by a bound Runnable, which stops the
+	 *         executive, or null
+	 */
+	public Throwable failure()
+	{
+		return m_failure;
+	}
+
+	public long cyclesCompleted()
+	{
+		return m_cyclesCompleted;
+	}
+
+	/**
+	 * @param taskId
+	 *            is the index of the task within the workload.
+	 * @return how late each of the task's jobs started, in nanoseconds
+	 */
+	public LatencyHistogram jitter(int taskId)
+	{
+		return m_jitter[taskId];
+	}
+
+	/**
+	 * @return by how much each job that ran longer than the task's duration
+	 *         overran it, in nanoseconds
+	 */
+	public LatencyHistogram overrun(int taskId)
+	{
+		return m_overrun[taskId];
+	}
+
+	/**
+	 * @return by how much each job that finished after its deadline missed it,
+	 *         in nanoseconds
+	 */
+	public LatencyHistogram lateness(int taskId)
+	{
+		return m_lateness[taskId];
+	}
+
+	private void dispatch(long origin, long numCycles)
+	{
+		for (long cycle = 0; m_running && (numCycles == 0 || cycle < numCycles); ++cycle)
+		{
+			long base = origin + cycle * m_hyperperiodNanos;
+			for (int job = 0; m_running && job < m_releaseNanos.length; ++job)
+			{
+				long release = base + m_releaseNanos[job];
+				waitUntil(release);
+				if (!m_running)
+					break;
+
+				long started = System.nanoTime();
+				m_runnables[job].run();
+				long finished = System.nanoTime();
+
+				int taskId = m_taskIds[job];
+				m_jitter[taskId].record(started - release);
+
+				long elapsed = finished - started;
+				if (elapsed > m_budgetNanos[job])
+					m_overrun[taskId].record(elapsed - m_budgetNanos[job]);
+
+				long deadline = base + m_deadlineNanos[job];
+				if (finished > deadline)
+					m_lateness[taskId].record(finished - deadline);
+			}
+
+			if (m_running)
+				m_cyclesCompleted = cycle + 1;
+		}
+	}
+
+	/*
+	 * Park while the release is comfortably far off, then spin so that the
+	 * wake-up latency of parking does not show up as jitter.
+	 */
+	private void waitUntil(long release)
+	{
+		long remaining;
+		while (m_running && (remaining = release - System.nanoTime()) > 0)
+		{
+			if (remaining > m_spinNanos)
+				LockSupport.parkNanos(remaining - m_spinNanos);
+			else
+				Thread.onSpinWait();
+		}
+	}
+
+	@Override
+	public String toString()
+	{
+		StringBuffer sb = new StringBuffer();
+
+		for (int i = 0; i < m_tasks.length; ++i)
+		{
+			sb.append(m_tasks[i].name());
+			sb.append(": jitter=");
+			sb.append(m_jitter[i]);
+			sb.append(", overruns=");
+			sb.append(m_overrun[i].count());
+			sb.append(", misses=");
+			sb.append(m_lateness[i].count());
+			sb.append('\n');
+		}
+
+		String result = sb.toString();
+		return result;
+	}
+
+}
@@ -0,0 +1,203 @@
+package khopps.msse;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * DispatchTable answers the runtime dispatcher's questions about a compiled
+ * schedule: which task starts at a given tick, and when the next dispatch
+ * happens. The table is read in place from a ByteBuffer, normally a memory
+ * mapped file written by DispatchTableCompiler, so loading it does no parsing
+ * and the lookups do no allocation.
+ *
+ * Times passed to the lookups may lie in any hyperperiod; the schedule simply
+ * repeats.
+ *
+ * @author khopps
+ *
+ */
+public class DispatchTable
+{
+	public static final int NO_TASK = -1;
+
+	private final ByteBuffer m_buffer;
+	private final long m_hyperperiod;
+	private final long m_slotWidth;
+	private final int m_numTasks;
+	private final int m_numRecords;
+	private final int m_numSlots;
+	private final int m_stringsOffset;
+	private final int m_recordsOffset;
+	private final int m_slotsOffset;
+
+	private DispatchTable(ByteBuffer buffer)
+	{
+		m_buffer = buffer;
+
+		if (buffer.capacity() < DispatchTableCompiler.HEADER_SIZE
+				|| buffer.getInt(0) != DispatchTableCompiler.MAGIC)
+			throw new IllegalArgumentException("Not a dispatch table");
+
+		int version = buffer.getInt(4);
+		if (version != DispatchTableCompiler.VERSION)
+			throw new IllegalArgumentException("Unsupported dispatch table version " + version);
+
+		m_hyperperiod = buffer.getLong(8);
+		m_slotWidth = buffer.getLong(16);
+		m_numTasks = buffer.getInt(24);
+		m_numRecords = buffer.getInt(28);
+		m_numSlots = buffer.getInt(32);
+		m_stringsOffset = buffer.getInt(36);
+		m_recordsOffset = buffer.getInt(40);
+		m_slotsOffset = buffer.getInt(44);
+
+		if (m_slotsOffset + 4L * m_numSlots > buffer.capacity())
+			throw new IllegalArgumentException("Dispatch table is truncated");
+	}
+
+	/**
+	 * @param buffer
+	 *            holds a table from DispatchTableCompiler, starting at index
+	 *            zero.
+	 */
+	public static DispatchTable wrap(ByteBuffer buffer)
+	{
+		return new DispatchTable(buffer);
+	}
+
+	/**
+	 * Map a dispatch table file into memory, read-only.
+	 */
+	public static DispatchTable map(File file) throws IOException
+	{
+		RandomAccessFile raf = new RandomAccessFile(file, "r");
+		try
+		{
+			FileChannel channel = raf.getChannel();
+			ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+			return wrap(buffer);
+		}
+		finally
+		{
+			raf.close(); // the mapping stays valid after the file is closed
+		}
+	}
+
+	public long hyperperiod()
+	{
+		return m_hyperperiod;
+	}
+
+	public int numTasks()
+	{
+		return m_numTasks;
+	}
+
+	/**
+	 * This allocates the String, so it is meant for setting up the
+	 * dispatcher, not for use while dispatching.
+	 *
+	 * @param taskId
+	 * @return the name of the task
+	 */
+	public String taskName(int taskId)
+	{
+		int offset = m_buffer.getInt(m_stringsOffset + 8 * taskId);
+		int length = m_buffer.getInt(m_stringsOffset + 8 * taskId + 4);
+
+		byte[] bytes = new byte[length];
+		for (int i = 0; i < length; ++i)
+			bytes[i] = m_buffer.get(offset + i);
+
+		String result = new String(bytes, StandardCharsets.UTF_8);
+		return result;
+	}
+
+	public int numRecords()
+	{
+		return m_numRecords;
+	}
+
+	/**
+	 * @param record
+	 * @return the start of the record within the hyperperiod
+	 */
+	public long start(int record)
+	{
+		return m_buffer.getLong(m_recordsOffset + DispatchTableCompiler.RECORD_SIZE * record);
+	}
+
+	public long length(int record)
+	{
+		return m_buffer.getLong(m_recordsOffset + DispatchTableCompiler.RECORD_SIZE * record + 8);
+	}
+
+	public int taskId(int record)
+	{
+		return m_buffer.getInt(m_recordsOffset + DispatchTableCompiler.RECORD_SIZE * record + 16);
+	}
+
+	/**
+	 * @param time
+	 * @return the index of the first record starting at or after the time
+	 *         within its hyperperiod, or numRecords() if there is none before
+	 *         the hyperperiod ends.
+	 */
+	public int nextRecord(long time)
+	{
+		long offset = Math.floorMod(time, m_hyperperiod);
+		int slot = (int)(offset / m_slotWidth);
+
+		/*
+		 * The slot points at the first record starting in it. Normally a slot
+		 * holds at most one start, so this loop runs at most once.
+		 */
+		int result = m_buffer.getInt(m_slotsOffset + 4 * slot);
+		while (result < m_numRecords && start(result) < offset)
+			++result;
+
+		return result;
+	}
+
+	/**
+	 * @param time
+	 * @return the id of the task that starts at the time, or NO_TASK
+	 */
+	public int taskStartingAt(long time)
+	{
+		int result = NO_TASK;
+
+		int record = nextRecord(time);
+		if (record < m_numRecords && start(record) == Math.floorMod(time, m_hyperperiod))
+			result = taskId(record);
+
+		return result;
+	}
+
+	/**
+	 * @param time
+	 * @return the time of the first dispatch at or after the time, or -1 if
+	 *         the schedule has no tasks.
+	 */
+	public long nextDispatch(long time)
+	{
+		long result = -1;
+
+		if (m_numRecords > 0)
+		{
+			long base = time - Math.floorMod(time, m_hyperperiod);
+			int record = nextRecord(time);
+			if (record < m_numRecords)
+				result = base + start(record);
+			else
+				result = base + m_hyperperiod + start(0);
+		}
+
+		return result;
+	}
+
+}
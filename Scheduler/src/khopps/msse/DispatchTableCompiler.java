@@ -0,0 +1,221 @@
+package khopps.msse;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * DispatchTableCompiler turns a verified schedule into the binary form read by
+ * DispatchTable. The layout, all big-endian, is:
+ *
+ * <pre>
+ * header   int magic, int version, long hyperperiod, long slotWidth,
+ *          int numTasks, int numRecords, int numSlots,
+ *          int stringsOffset, int recordsOffset, int slotsOffset
+ * strings  numTasks * (int offset, int length), then the UTF-8 task names
+ * records  numRecords * (long start, long length, int taskId, int unused)
+ * slots    numSlots * int, the first record starting at or after slot * slotWidth
+ * </pre>
+ *
+ * Records are sorted by start time and Idle tasks are left out. The slot width
+ * is chosen so that each slot holds at most one record start, which makes a
+ * lookup a single slot read plus one record comparison.
+ *
+ * @author khopps
+ *
+ */
+public class DispatchTableCompiler
+{
+	static final int MAGIC = 0x4B534454; // "KSDT"
+	static final int VERSION = 1;
+	static final int HEADER_SIZE = 48;
+	static final int RECORD_SIZE = 24;
+	static final int MAX_SLOTS = 1 << 22; // beyond this, slots share starts
+
+	/**
+	 * @param workload
+	 * @param schedule
+	 *            is a schedule for the workload, as from
+	 *            Scheduler.makeSchedule().
+	 * @return the dispatch table, ready to be read by DispatchTable.wrap().
+	 * @throws IllegalArgumentException
+	 *             if the schedule is not correct for the workload.
+	 */
+	public static ByteBuffer compile(Workload workload, Task[] schedule)
+	{
+		verify(workload, schedule);
+
+		Task[] tasks = workload.tasks();
+		long hyperperiod = Scheduler.hyperperiod(tasks);
+
+		/*
+		 * Lay out the records, leaving out the Idle tasks.
+		 */
+		JobOrder order = new JobOrder(workload, schedule);
+		int numRecords = order.size();
+
+		long slotWidth = slotWidth(order, hyperperiod);
+		int numSlots = (int)((hyperperiod + slotWidth - 1) / slotWidth);
+
+		byte[][] names = new byte[tasks.length][];
+		int namesSize = 0;
+		for (int i = 0; i < tasks.length; ++i)
+		{
+			names[i] = tasks[i].name().getBytes(StandardCharsets.UTF_8);
+			namesSize += names[i].length;
+		}
+
+		int stringsOffset = HEADER_SIZE;
+		int recordsOffset = align(stringsOffset + 8 * tasks.length + namesSize);
+		int slotsOffset = recordsOffset + RECORD_SIZE * numRecords;
+		int size = slotsOffset + 4 * numSlots;
+
+		ByteBuffer result = ByteBuffer.allocate(size);
+
+		result.putInt(MAGIC);
+		result.putInt(VERSION);
+		result.putLong(hyperperiod);
+		result.putLong(slotWidth);
+		result.putInt(tasks.length);
+		result.putInt(numRecords);
+		result.putInt(numSlots);
+		result.putInt(stringsOffset);
+		result.putInt(recordsOffset);
+		result.putInt(slotsOffset);
+
+		int nameOffset = stringsOffset + 8 * tasks.length;
+		for (int i = 0; i < tasks.length; ++i)
+		{
+			result.putInt(stringsOffset + 8 * i, nameOffset);
+			result.putInt(stringsOffset + 8 * i + 4, names[i].length);
+			result.position(nameOffset);
+			result.put(names[i]);
+			nameOffset += names[i].length;
+		}
+
+		for (int i = 0; i < numRecords; ++i)
+		{
+			int offset = recordsOffset + RECORD_SIZE * i;
+			result.putLong(offset, order.start(i));
+			result.putLong(offset + 8, tasks[order.taskId(i)].duration());
+			result.putInt(offset + 16, order.taskId(i));
+			result.putInt(offset + 20, 0);
+		}
+
+		int record = 0;
+		for (int s = 0; s < numSlots; ++s)
+		{
+			long slotStart = s * slotWidth;
+			while (record < numRecords && order.start(record) < slotStart)
+				++record;
+			result.putInt(slotsOffset + 4 * s, record);
+		}
+
+		result.clear();
+		return result;
+	}
+
+	/**
+	 * Compile the schedule and write the dispatch table to a file.
+	 */
+	public static void compile(Workload workload, Task[] schedule, File file) throws IOException
+	{
+		ByteBuffer table = compile(workload, schedule);
+
+		FileOutputStream out = new FileOutputStream(file);
+		try
+		{
+			FileChannel channel = out.getChannel();
+			while (table.hasRemaining())
+				channel.write(table);
+		}
+		finally
+		{
+			out.close();
+		}
+	}
+
+	/**
+	 * The slot width is the smallest gap between successive starts (including
+	 * the gap that wraps around the hyperperiod), so no slot holds two starts.
+	 * It is widened if that would make the table too large.
+	 */
+	private static long slotWidth(JobOrder order, long hyperperiod)
+	{
+		long result = hyperperiod;
+
+		int numStarts = order.size();
+		for (int i = 1; i < numStarts; ++i)
+			result = Math.min(result, order.start(i) - order.start(i - 1));
+		if (numStarts > 0)
+			result = Math.min(result, hyperperiod - order.start(numStarts - 1) + order.start(0));
+
+		result = Math.max(result, (hyperperiod + MAX_SLOTS - 1) / MAX_SLOTS);
+		result = Math.max(result, 1);
+
+		return result;
+	}
+
+	private static int align(int offset)
+	{
+		return (offset + 7) & ~7;
+	}
+
+	/**
+	 * This checks the same things as TextUI.verifySchedule(): the schedule
+	 * fills the hyperperiod, and each task runs exactly once in each of its
+	 * periods, starting and finishing within its specified parameters.
+	 */
+	static void verify(Workload workload, Task[] schedule)
+	{
+		Task[] tasks = workload.tasks();
+		long hyperperiod = Scheduler.hyperperiod(tasks);
+
+		long now = 0;
+		for (Task t : schedule)
+		{
+			if (!t.isIdleTask() && workload.indexOf(t) < 0)
+				throw new IllegalArgumentException("Task " + t.name() + " is not part of " + workload.name());
+			now += t.duration();
+		}
+		if (now < hyperperiod)
+			throw new IllegalArgumentException("Schedule ends at " + now + ", before the hyperperiod "
+					+ hyperperiod);
+
+		for (Task task : tasks)
+		{
+			int[] numRunsInPeriod = new int[(int)(hyperperiod / task.period())];
+
+			now = 0;
+			for (Task t : schedule)
+			{
+				if (t == task)
+				{
+					long periodIndex = now / t.period();
+					long relativeNow = now % t.period();
+
+					if (relativeNow < t.delay())
+						throw new IllegalArgumentException("Task " + t.name() + " launched too early at " + now);
+
+					if (relativeNow + t.duration() > t.deadline())
+						throw new IllegalArgumentException("Task " + t.name() + " launched at " + now
+								+ " missed deadline");
+
+					++numRunsInPeriod[(int)periodIndex];
+				}
+				now += t.duration();
+			}
+
+			for (int j = 0; j < numRunsInPeriod.length; ++j)
+			{
+				if (numRunsInPeriod[j] != 1)
+					throw new IllegalArgumentException("Task " + task.name() + " ran " + numRunsInPeriod[j]
+							+ " times in period " + j);
+			}
+		}
+	}
+
+}
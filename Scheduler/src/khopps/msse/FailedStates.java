@@ -0,0 +1,151 @@
+package khopps.msse;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * FailedStates remembers the states from which the Scheduler's search with
+ * inserted idle time could not finish a schedule. A state is the time, and
+ * the number of jobs each task has finished. That search is complete, so no
+ * schedule at all can be finished from a state that failed.
+ *
+ * Such a state also fails at any later time, and for any workload whose tasks
+ * with jobs still to run are no easier: the same periods and delays, no
+ * shorter durations and no later deadlines. A schedule for the harder workload
+ * would be one for the easier workload too, idling where its jobs ran longer.
+ * So the failures of one solve hold for the solves of other workloads that
+ * differ only in durations and deadlines, and one FailedStates may be shared
+ * by them all.
+ *
+ * @author khopps
+ *
+ */
+class FailedStates
+{
+	private static final int MAX_FAILURES = 100000; // remembering stops when this many are kept
+
+	private final HashMap<Long, List<Failure>> m_failures = new HashMap<Long, List<Failure>>(); // keyed by the jobs finished
+	private int m_numFailures = 0;
+
+	/**
+	 * @param state
+	 *            is the time, followed by the number of jobs each task has
+	 *            finished.
+	 * @param limits
+	 *            describes the workload being searched.
+	 * @return true if a state that finished the same jobs, no later, failed
+	 *         for a workload no harder.
+	 */
+	boolean hasFailed(long[] state, Limits limits)
+	{
+		boolean result = false;
+
+		List<Failure> failures = m_failures.get(key(state));
+		if (failures != null)
+		{
+			for (int n = 0; !result && n < failures.size(); ++n)
+			{
+				Failure failure = failures.get(n);
+				long[] other = failure.m_state;
+				result = other.length == state.length && other[0] <= state[0];
+				for (int i = 1; result && i < state.length; ++i)
+					result = other[i] == state[i];
+				if (result && failure.m_limits != limits)
+					result = limits.isNoEasierThan(failure.m_limits, state);
+			}
+		}
+
+		return result;
+	}
+
+	/**
+	 * Remember that the state failed for the workload.
+	 */
+	void fail(long[] state, Limits limits)
+	{
+		if (m_numFailures >= MAX_FAILURES)
+			return;
+
+		Long key = key(state);
+		List<Failure> failures = m_failures.get(key);
+		if (failures == null)
+		{
+			failures = new ArrayList<Failure>();
+			m_failures.put(key, failures);
+		}
+		failures.add(new Failure(state, limits));
+		++m_numFailures;
+	}
+
+	private static Long key(long[] state)
+	{
+		long result = 17;
+		for (int i = 1; i < state.length; ++i)
+			result = 31 * result + state[i];
+
+		return Long.valueOf(result);
+	}
+
+	private static class Failure
+	{
+		private final long[] m_state;
+		private final Limits m_limits;
+
+		Failure(long[] state, Limits limits)
+		{
+			m_state = state;
+			m_limits = limits;
+		}
+	}
+
+	/**
+	 * The timing of each task of a workload, as it was when the workload was
+	 * searched.
+	 */
+	static class Limits
+	{
+		private final long m_hyperperiod;
+		private final long[] m_periods;
+		private final long[] m_delays;
+		private final long[] m_durations;
+		private final long[] m_deadlines;
+
+		Limits(Task[] tasks, long hyperperiod)
+		{
+			m_hyperperiod = hyperperiod;
+			m_periods = new long[tasks.length];
+			m_delays = new long[tasks.length];
+			m_durations = new long[tasks.length];
+			m_deadlines = new long[tasks.length];
+			for (int i = 0; i < tasks.length; ++i)
+			{
+				m_periods[i] = tasks[i].period();
+				m_delays[i] = tasks[i].delay();
+				m_durations[i] = tasks[i].duration();
+				m_deadlines[i] = tasks[i].deadline();
+			}
+		}
+
+		/**
+		 * @return true if every task with jobs still to run in the state is
+		 *         at least as hard to schedule here as in the other workload.
+		 */
+		boolean isNoEasierThan(Limits other, long[] state)
+		{
+			boolean result = m_periods.length == other.m_periods.length;
+			for (int i = 0; result && i < m_periods.length; ++i)
+			{
+				result = m_periods[i] == other.m_periods[i];
+				if (result && state[i + 1] * m_periods[i] < m_hyperperiod)
+				{
+					result = m_delays[i] == other.m_delays[i] && m_durations[i] >= other.m_durations[i]
+							&& m_deadlines[i] <= other.m_deadlines[i];
+				}
+			}
+
+			return result;
+		}
+	}
+
+}
@@ -0,0 +1,334 @@
+package khopps.msse;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * FrameScheduler builds schedules for harmonic workloads, where every period
+ * divides every longer one, without searching. The hyperperiod is then the
+ * longest period, and it is cut into minor frames the length of the shortest
+ * period.
+ *
+ * Every job is given to the first frame, within its release and deadline
+ * window, that it can be added to with all of the frame's jobs still meeting
+ * their windows. A frame's jobs run earliest deadline first, idling when none
+ * has been released. Jobs never cross a frame boundary, so this can fail
+ * where the Scheduler's search would succeed; it is polynomial in the number
+ * of jobs, where the search is not.
+ *
+ * @author khopps
+ *
+ */
+public class FrameScheduler
+{
+	/*
+	 * Jobs with shorter periods have fewer frames to choose from, so they are
+	 * placed first.
+	 */
+	private static final Comparator<Job> PLACEMENT_ORDER = new Comparator<Job>()
+	{
+		@Override
+		public int compare(Job x, Job y)
+		{
+			int result = Long.compare(x.m_task.period(), y.m_task.period());
+			if (result == 0)
+				result = Long.compare(x.m_release, y.m_release);
+			if (result == 0)
+				result = Long.compare(x.m_deadline, y.m_deadline);
+
+			return result;
+		}
+	};
+
+	private static final Comparator<Job> RELEASE_ORDER = new Comparator<Job>()
+	{
+		@Override
+		public int compare(Job x, Job y)
+		{
+			return Long.compare(x.m_release, y.m_release);
+		}
+	};
+
+	/*
+	 * Ties go to the job placed first, so a job added to a frame never runs
+	 * ahead of one with the same deadline.
+	 */
+	private static final Comparator<Job> DEADLINE_ORDER = new Comparator<Job>()
+	{
+		@Override
+		public int compare(Job x, Job y)
+		{
+			int result = Long.compare(x.m_deadline, y.m_deadline);
+			if (result == 0)
+				result = Integer.compare(x.m_sequence, y.m_sequence);
+
+			return result;
+		}
+	};
+
+	/**
+	 * @param tasks
+	 * @return true if, of any two periods, the shorter divides the longer.
+	 */
+	public static boolean isHarmonic(Task[] tasks)
+	{
+		long[] periods = new long[tasks.length];
+		for (int i = 0; i < tasks.length; ++i)
+			periods[i] = tasks[i].period();
+		Arrays.sort(periods);
+
+		boolean result = true;
+		for (int i = 1; result && i < periods.length; ++i)
+			result = MathUtils.gcd(periods[i - 1], periods[i]) == periods[i - 1];
+
+		return result;
+	}
+
+	/**
+	 * @param workload
+	 * @return the tasks, in order of their execution for the hyperperiod, or
+	 *         null if the workload is not harmonic or its jobs cannot be
+	 *         packed into frames. Null does not mean that no schedule exists.
+	 */
+	public static Task[] makeSchedule(Workload workload)
+	{
+		Task[] result = null;
+
+		Task[] tasks = workload.tasks();
+		if (tasks.length > 0 && isHarmonic(tasks))
+		{
+			long hyperperiod = Scheduler.hyperperiod(tasks);
+			long frameLength = hyperperiod;
+			for (Task task : tasks)
+				frameLength = Math.min(frameLength, task.period());
+
+			Frame[] frames = pack(jobs(tasks, hyperperiod), frameLength, (int)(hyperperiod / frameLength));
+			if (frames != null)
+				result = layOut(frames);
+		}
+
+		return result;
+	}
+
+	/**
+	 * @return every job of the hyperperiod, in placement order.
+	 */
+	private static Job[] jobs(Task[] tasks, long hyperperiod)
+	{
+		int numJobs = 0;
+		for (Task task : tasks)
+			numJobs += (int)(hyperperiod / task.period());
+
+		Job[] result = new Job[numJobs];
+		int j = 0;
+		for (Task task : tasks)
+		{
+			for (long periodStart = 0; periodStart < hyperperiod; periodStart += task.period())
+				result[j++] = new Job(task, periodStart + task.delay(), periodStart + task.deadline());
+		}
+		Arrays.sort(result, PLACEMENT_ORDER);
+		for (int i = 0; i < result.length; ++i)
+			result[i].m_sequence = i;
+
+		return result;
+	}
+
+	/**
+	 * First fit of the jobs into frames.
+	 *
+	 * @return the frames, or null if some job fits in none.
+	 */
+	private static Frame[] pack(Job[] jobs, long frameLength, int numFrames)
+	{
+		Frame[] result = new Frame[numFrames];
+		for (int f = 0; f < numFrames; ++f)
+			result[f] = new Frame(f * frameLength, frameLength);
+
+		for (Job job : jobs)
+		{
+			int lastFrame = (int)Math.min(numFrames - 1, (job.m_deadline - 1) / frameLength);
+
+			boolean placed = false;
+			for (int f = (int)(job.m_release / frameLength); !placed && f <= lastFrame; ++f)
+				placed = result[f].add(job);
+
+			if (!placed)
+				return null;
+		}
+
+		return result;
+	}
+
+	/**
+	 * @return the frames one after another, with Idle tasks filling the gaps.
+	 */
+	private static Task[] layOut(Frame[] frames)
+	{
+		List<Task> schedule = new ArrayList<Task>();
+
+		long idle = 0; // not yet added, so that the gaps between frames merge
+		for (Frame frame : frames)
+		{
+			List<Task> tasks = new ArrayList<Task>();
+			frame.run(tasks);
+
+			long used = 0;
+			for (Task task : tasks)
+			{
+				if (task.isIdleTask())
+					idle += task.duration();
+				else
+				{
+					if (idle > 0)
+						schedule.add(Task.newIdleTask(idle));
+					idle = 0;
+					schedule.add(task);
+				}
+				used += task.duration();
+			}
+			idle += frame.m_length - used;
+		}
+		if (idle > 0)
+			schedule.add(Task.newIdleTask(idle));
+
+		Task[] result = new Task[schedule.size()];
+		schedule.toArray(result);
+
+		return result;
+	}
+
+	/**
+	 * A minor frame, and the jobs given to it so far.
+	 */
+	private static class Frame
+	{
+		private final long m_start;
+		private final long m_length;
+		private final List<Job> m_jobs = new ArrayList<Job>();
+		private long m_load = 0;
+		private long m_end; // when the last job finishes
+		private boolean m_gapless = true; // no idle before m_end
+		private long m_maxDeadline = Long.MIN_VALUE;
+
+		Frame(long start, long length)
+		{
+			m_start = start;
+			m_length = length;
+			m_end = start;
+		}
+
+		/**
+		 * @return true if the job was added, all of the frame's jobs still
+		 *         meeting their windows; otherwise the frame is unchanged.
+		 */
+		boolean add(Job job)
+		{
+			boolean result = false;
+
+			long duration = job.m_task.duration();
+			long windowStart = Math.max(m_start, job.m_release);
+			long windowEnd = Math.min(m_start + m_length, job.m_deadline);
+			if (m_load + duration <= m_length && windowEnd - windowStart >= duration)
+			{
+				if (m_gapless && job.m_release <= m_start && job.m_deadline >= m_maxDeadline)
+				{
+					/*
+					 * The job would run last, straight after the others, so
+					 * there is no need to run the frame again.
+					 */
+					result = m_end + duration <= windowEnd;
+					if (result)
+					{
+						m_jobs.add(job);
+						m_end += duration;
+						m_maxDeadline = job.m_deadline;
+					}
+				}
+				else
+				{
+					m_jobs.add(job);
+					result = run(null);
+					if (!result)
+						m_jobs.remove(m_jobs.size() - 1);
+				}
+
+				if (result)
+					m_load += duration;
+			}
+
+			return result;
+		}
+
+		/**
+		 * Run the jobs earliest deadline first, from the start of the frame.
+		 *
+		 * @param schedule
+		 *            receives the jobs, with Idle tasks for the gaps between
+		 *            them. It may be null.
+		 * @return true if every job meets its deadline and the frame's end.
+		 */
+		boolean run(List<Task> schedule)
+		{
+			boolean result = true;
+
+			Job[] byRelease = m_jobs.toArray(new Job[m_jobs.size()]);
+			Arrays.sort(byRelease, RELEASE_ORDER);
+			PriorityQueue<Job> ready = new PriorityQueue<Job>(Math.max(1, byRelease.length), DEADLINE_ORDER);
+
+			long now = m_start;
+			boolean gapless = true;
+			long maxDeadline = Long.MIN_VALUE;
+			int next = 0;
+			while (result && (next < byRelease.length || !ready.isEmpty()))
+			{
+				if (ready.isEmpty() && byRelease[next].m_release > now)
+				{
+					if (schedule != null)
+						schedule.add(Task.newIdleTask(byRelease[next].m_release - now));
+					now = byRelease[next].m_release;
+					gapless = false;
+				}
+				while (next < byRelease.length && byRelease[next].m_release <= now)
+					ready.add(byRelease[next++]);
+
+				Job job = ready.poll();
+				if (schedule != null)
+					schedule.add(job.m_task);
+				now += job.m_task.duration();
+				maxDeadline = Math.max(maxDeadline, job.m_deadline);
+				result = now <= job.m_deadline && now <= m_start + m_length;
+			}
+
+			if (result)
+			{
+				m_end = now;
+				m_gapless = gapless;
+				m_maxDeadline = maxDeadline;
+			}
+
+			return result;
+		}
+	}
+
+	/**
+	 * One run of a task, with its absolute release and deadline.
+	 */
+	private static class Job
+	{
+		private final Task m_task;
+		private final long m_release;
+		private final long m_deadline;
+		private int m_sequence; // the job's place in the placement order
+
+		Job(Task task, long release, long deadline)
+		{
+			m_task = task;
+			m_release = release;
+			m_deadline = deadline;
+		}
+	}
+
+}
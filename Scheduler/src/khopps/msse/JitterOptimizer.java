@@ -0,0 +1,670 @@
+package khopps.msse;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+
+/**
+ * JitterOptimizer looks for the schedule with the least start-time jitter. A
+ * task's jitter is the spread of its start times relative to the start of
+ * each of its periods, and the jitter of a schedule is the sum of its tasks'
+ * jitter, each times a weight.
+ *
+ * The first feasible schedule comes from the Scheduler, with inserted idle
+ * time. A branch and bound search then looks for better ones, cutting off any
+ * path whose jitter, plus the least jitter its pending jobs must still add, is
+ * no better than the best schedule found so far.
+ *
+ * Idling is how jitter is taken out of a schedule, and a job may need to wait
+ * past every release and every finish to line up with the task's other jobs.
+ * So each decision of the search is the next job to start and the time it
+ * starts, which may be any time in the job's window that leaves the other
+ * tasks' next jobs able to meet their deadlines after it. Every schedule is a
+ * path through this tree. Of the starts that keep a task's spread as it is,
+ * only the earliest is tried, since the later ones can do nothing more, and
+ * past the top of the spread only the first is. Where a window still holds
+ * too many starts, only those that line up with a release or with the edge
+ * of a spread are tried, so that the search does not grow with the unit of
+ * time. The choices that add the least jitter are tried first.
+ *
+ * The whole tree is large, so for the first half of the budget the search
+ * only tries the choices the Scheduler would: the jobs that can start
+ * earliest, starting then. That quickly finds good schedules, and then the
+ * whole tree is searched for better ones. Only a finished search of the whole
+ * tree, with every start that could matter tried, shows that a schedule is
+ * optimal.
+ *
+ * The search stops when its time budget runs out, and the best schedule
+ * found by then is returned. The budget covers the Scheduler's first solve
+ * too.
+ *
+ * @author khopps
+ *
+ */
+public class JitterOptimizer
+{
+	private static final int CHECK_INTERVAL = 1024; // steps between checks of the clock
+	private static final int MAX_STARTS = 64; // a window with more open starts is not tried tick by tick
+
+	private static final Comparator<Choice> CHOICE_ORDER = new Comparator<Choice>()
+	{
+		@Override
+		public int compare(Choice x, Choice y)
+		{
+			int result = Long.compare(x.m_added, y.m_added);
+			if (result == 0)
+				result = Long.compare(x.m_start, y.m_start);
+			if (result == 0)
+				result = Long.compare(x.m_deadline, y.m_deadline);
+
+			return result;
+		}
+	};
+
+	private final long m_budgetMillis;
+	private boolean m_optimal = false;
+
+	// the state of a search
+	private Task[] m_tasks = null;
+	private long[] m_weights = null;
+	private long m_hyperperiod;
+	private long m_stopTime;
+	private boolean m_stopped;
+	private boolean m_earliestOnly; // whether only the Scheduler's choices are tried
+	private boolean m_complete; // whether every start that could matter has been tried
+	private long m_steps; // nodes entered and starts considered
+	private long[] m_lowest = null; // the least relative start of each task so far
+	private long[] m_highest = null; // the greatest relative start of each task so far
+	private long m_jitter; // of the schedule so far
+	private Task[] m_best = null;
+	private long m_bestJitter;
+	private long[] m_starts = null; // the starts that can matter for the job being considered
+
+	// the decision at each depth of the search
+	private Choice[][] m_choiceSets = null; // the choices, in the order they are tried
+	private int[] m_path = null; // the index of the choice being tried
+	private long[] m_previousLaunch = null; // of the task of the choice being tried
+	private long[] m_previousLowest = null;
+	private long[] m_previousHighest = null;
+	private long[] m_previousJitter = null;
+
+	/**
+	 * @param budgetMillis
+	 *            is the time allowed for each optimization.
+	 */
+	public JitterOptimizer(long budgetMillis)
+	{
+		m_budgetMillis = budgetMillis;
+	}
+
+	/**
+	 * @return true if the last result of optimize() is known to be final: a
+	 *         schedule with the least jitter of any for the workload, rather
+	 *         than the best found within the budget, or null for a workload
+	 *         that cannot be scheduled.
+	 */
+	public boolean isOptimal()
+	{
+		return m_optimal;
+	}
+
+	/**
+	 * This optimizes with every task weighted equally.
+	 *
+	 * @param workload
+	 * @return the tasks, in order of their execution for the hyperperiod, or
+	 *         null if the tasks cannot be scheduled.
+	 */
+	public Task[] optimize(Workload workload)
+	{
+		long[] weights = new long[workload.tasks().length];
+		Arrays.fill(weights, 1);
+
+		return optimize(workload, weights);
+	}
+
+	/**
+	 * The search stops with a CancellationException if the calling thread is
+	 * interrupted.
+	 *
+	 * @param workload
+	 * @param weights
+	 *            is the weight of each task's jitter, in workload order.
+	 * @return the tasks, in order of their execution for the hyperperiod, or
+	 *         null if the tasks cannot be scheduled or, when isOptimal() is
+	 *         false, if no schedule was found within the budget.
+	 */
+	public Task[] optimize(Workload workload, long[] weights)
+	{
+		Task[] tasks = workload.tasks();
+		if (weights.length != tasks.length)
+			throw new IllegalArgumentException("There must be one weight for each task");
+		for (long weight : weights)
+		{
+			if (weight < 0)
+				throw new IllegalArgumentException("Weights may not be negative");
+		}
+
+		long startTime = System.currentTimeMillis();
+		m_stopTime = startTime + m_budgetMillis;
+		m_stopped = false;
+
+		Task[] result = firstSchedule(workload);
+		m_optimal = result == null && !m_stopped;
+		if (result != null)
+		{
+			for (Task task : tasks)
+				task.reset();
+
+			m_tasks = tasks;
+			m_weights = weights;
+			m_hyperperiod = Scheduler.hyperperiod(tasks);
+			m_steps = 0;
+			m_lowest = new long[tasks.length];
+			m_highest = new long[tasks.length];
+			Arrays.fill(m_lowest, Long.MAX_VALUE);
+			Arrays.fill(m_highest, Long.MIN_VALUE);
+			m_starts = new long[MAX_STARTS + 3 * tasks.length + 1];
+			m_jitter = 0;
+			m_best = result;
+			m_bestJitter = jitter(workload, result, weights);
+
+			int numJobs = 0;
+			for (Task task : tasks)
+				numJobs += (int)(m_hyperperiod / task.period());
+			m_choiceSets = new Choice[numJobs][];
+			m_path = new int[numJobs];
+			m_previousLaunch = new long[numJobs];
+			m_previousLowest = new long[numJobs];
+			m_previousHighest = new long[numJobs];
+			m_previousJitter = new long[numJobs];
+
+			try
+			{
+				m_earliestOnly = true;
+				m_stopTime = startTime + m_budgetMillis / 2;
+				search(numJobs);
+
+				m_earliestOnly = false;
+				m_stopTime = startTime + m_budgetMillis;
+				m_stopped = false;
+				m_complete = true;
+				search(numJobs);
+
+				result = m_best;
+				m_optimal = (!m_stopped && m_complete) || m_bestJitter == 0; // no jitter is as good as it gets
+			}
+			finally
+			{
+				for (Task task : tasks)
+					task.reset();
+				m_tasks = null;
+				m_weights = null;
+				m_lowest = null;
+				m_highest = null;
+				m_starts = null;
+				m_best = null;
+				m_choiceSets = null;
+				m_path = null;
+				m_previousLaunch = null;
+				m_previousLowest = null;
+				m_previousHighest = null;
+				m_previousJitter = null;
+			}
+		}
+
+		return result;
+	}
+
+	/**
+	 * The first schedule comes from the Scheduler, which is stopped if the
+	 * budget runs out before it finishes.
+	 *
+	 * @return the schedule, or null if there is none or none was found in time.
+	 */
+	private Task[] firstSchedule(Workload workload)
+	{
+		Scheduler scheduler = new Scheduler();
+		scheduler.setInsertedIdleTime(true);
+		scheduler.setProgressListener(new ProgressListener()
+		{
+			@Override
+			public void progress(long nodes, long now, long best, long hyperperiod)
+			{
+				if (System.currentTimeMillis() >= m_stopTime)
+				{
+					m_stopped = true;
+					throw new CancellationException("Jitter optimization ran out of time");
+				}
+			}
+		});
+
+		Task[] result = null;
+		try
+		{
+			result = scheduler.makeSchedule(workload);
+		}
+		catch (CancellationException e)
+		{
+			if (!m_stopped)
+				throw e; // interrupted
+		}
+
+		return result;
+	}
+
+	/**
+	 * @param workload
+	 * @param schedule
+	 *            is a schedule for the workload.
+	 * @param weights
+	 *            is the weight of each task's jitter, in workload order.
+	 * @return the weighted start-time jitter of the schedule.
+	 */
+	public static long jitter(Workload workload, Task[] schedule, long[] weights)
+	{
+		Task[] tasks = workload.tasks();
+		long[] lowest = new long[tasks.length];
+		long[] highest = new long[tasks.length];
+		Arrays.fill(lowest, Long.MAX_VALUE);
+		Arrays.fill(highest, Long.MIN_VALUE);
+
+		long now = 0;
+		for (Task task : schedule)
+		{
+			int taskId = workload.indexOf(task);
+			if (taskId >= 0)
+			{
+				long relativeStart = now % task.period();
+				lowest[taskId] = Math.min(lowest[taskId], relativeStart);
+				highest[taskId] = Math.max(highest[taskId], relativeStart);
+			}
+			now += task.duration();
+		}
+
+		long result = 0;
+		for (int i = 0; i < tasks.length; ++i)
+		{
+			if (highest[i] >= lowest[i])
+				result += weights[i] * (highest[i] - lowest[i]);
+		}
+
+		return result;
+	}
+
+	/**
+	 * Try every way of placing the jobs, in start order, that could beat the
+	 * best schedule found so far. A hyperperiod may hold a great many jobs, so
+	 * the search keeps its own stack of decisions rather than recursing.
+	 *
+	 * @param numJobs
+	 *            is the number of jobs in the hyperperiod, and so the number
+	 *            of decisions in a schedule.
+	 */
+	private void search(int numJobs)
+	{
+		if (numJobs == 0 || !enter(0, 0))
+			return;
+
+		int depth = 0; // of the deepest open decision
+		while (depth >= 0 && !m_stopped)
+		{
+			int i = ++m_path[depth];
+			if (i >= m_choiceSets[depth].length)
+			{
+				m_choiceSets[depth] = null;
+				if (--depth >= 0)
+					undo(depth);
+				continue;
+			}
+
+			Choice choice = m_choiceSets[depth][i];
+			long finish = place(depth, choice);
+			if (depth + 1 == numJobs)
+			{
+				if (m_jitter < m_bestJitter)
+				{
+					m_best = schedule(numJobs);
+					m_bestJitter = m_jitter;
+				}
+				undo(depth);
+			}
+			else if (enter(depth + 1, finish))
+				++depth;
+			else
+				undo(depth);
+		}
+
+		/*
+		 * If the search was stopped, the decisions still open are undone, so
+		 * that the next search starts from nothing.
+		 */
+		while (--depth >= 0)
+			undo(depth);
+	}
+
+	/**
+	 * Open the decision at the given depth, ready for its first choice to be
+	 * tried.
+	 *
+	 * @param now
+	 *            is the time the last job placed finishes.
+	 * @return false if no choice there could lead to a better schedule.
+	 */
+	private boolean enter(int depth, long now)
+	{
+		if (step() || lowerBound(now) >= m_bestJitter)
+			return false;
+
+		Choice[] choices = choices(now);
+		m_choiceSets[depth] = choices;
+		m_path[depth] = -1;
+
+		return choices.length > 0;
+	}
+
+	/**
+	 * Every other task's next job starts after the one placed, so the placed
+	 * job must finish by the time the tightest of them must start.
+	 *
+	 * @return every job that could start next and the times it could start
+	 *         that can matter, in the order they are to be tried, leaving out
+	 *         any that would make the jitter no better than the best so far.
+	 */
+	private Choice[] choices(long now)
+	{
+		List<Choice> result = new ArrayList<Choice>();
+
+		long tightest = Long.MAX_VALUE; // the least latest start of a pending job
+		long nextTightest = Long.MAX_VALUE;
+		for (Task task : m_tasks)
+		{
+			long latestStart = task.nextDeadline() - task.duration();
+			if (task.nextDeadline() - task.deadline() >= m_hyperperiod)
+				latestStart = Long.MAX_VALUE; // no jobs left
+			if (latestStart < tightest)
+			{
+				nextTightest = tightest;
+				tightest = latestStart;
+			}
+			else if (latestStart < nextTightest)
+				nextTightest = latestStart;
+		}
+
+		/*
+		 * The Scheduler runs a job now if it can, or else idles until the
+		 * next release.
+		 */
+		long earliest = Long.MAX_VALUE;
+		if (m_earliestOnly)
+		{
+			for (Task task : m_tasks)
+			{
+				long periodStart = task.nextDeadline() - task.deadline();
+				if (periodStart < m_hyperperiod)
+					earliest = Math.min(earliest, Math.max(now, periodStart + task.delay()));
+			}
+		}
+
+		for (int id = 0; id < m_tasks.length && !m_stopped; ++id)
+		{
+			Task task = m_tasks[id];
+			long periodStart = task.nextDeadline() - task.deadline();
+			if (periodStart < m_hyperperiod)
+			{
+				long firstStart = Math.max(now, periodStart + task.delay());
+				long latestStart = task.nextDeadline() - task.duration();
+				long othersStart = (latestStart == tightest) ? nextTightest : tightest;
+				long lastStart = Math.min(latestStart, othersStart - task.duration());
+				if (m_earliestOnly)
+					lastStart = Math.min(lastStart, earliest);
+
+				/*
+				 * Past the top of the task's spread, a later start adds more
+				 * jitter and finishes later, so only the first is tried.
+				 */
+				if (m_highest[id] >= m_lowest[id])
+					lastStart = Math.min(lastStart, Math.max(firstStart, periodStart + m_highest[id]));
+
+				int numStarts = (firstStart <= lastStart) ? starts(id, firstStart, lastStart) : 0;
+				boolean within = false; // whether a start inside the task's spread has been kept
+				for (int n = 0; n < numStarts && !step(); ++n)
+				{
+					long relativeStart = m_starts[n] - periodStart;
+					long added = added(id, relativeStart);
+					if (relativeStart >= m_lowest[id] && relativeStart <= m_highest[id])
+					{
+						if (within)
+							continue; // an earlier start leaves the same spread, and more time
+						within = true;
+					}
+					if (m_jitter + added < m_bestJitter)
+						result.add(new Choice(id, m_starts[n], added, task.nextDeadline()));
+				}
+			}
+		}
+
+		Choice[] choices = result.toArray(new Choice[result.size()]);
+		Arrays.sort(choices, CHOICE_ORDER);
+
+		return choices;
+	}
+
+	/**
+	 * A start before the bottom of the task's spread adds less jitter the
+	 * later it is, but finishes later, so each of them may matter. When there
+	 * are no more than MAX_STARTS of them, they are all tried. Otherwise only
+	 * the starts that line up with something are: the edges of the task's
+	 * spread, and the times that have the job finish just as a task's next
+	 * job is released or reaches an edge of that task's spread. That keeps the
+	 * work of a decision from growing with the unit of time, but the search
+	 * is then no longer complete.
+	 *
+	 * @return the number of starts put in m_starts, in increasing order,
+	 *         always including the first.
+	 */
+	private int starts(int id, long firstStart, long lastStart)
+	{
+		Task task = m_tasks[id];
+		long lastOpen = lastStart; // of the starts no earlier start is as good as
+		if (m_highest[id] >= m_lowest[id])
+			lastOpen = Math.min(lastStart, task.nextDeadline() - task.deadline() + m_lowest[id] - 1);
+
+		boolean every = lastOpen - firstStart <= MAX_STARTS;
+		if (!every)
+			m_complete = false;
+
+		int numStarts = 0;
+		m_starts[numStarts++] = firstStart;
+		for (long start = firstStart + 1; every && start <= lastOpen; ++start)
+			m_starts[numStarts++] = start;
+
+		for (int i = 0; i < m_tasks.length; ++i)
+		{
+			Task other = m_tasks[i];
+			long periodStart = other.nextDeadline() - other.deadline();
+			if (periodStart < m_hyperperiod && (i == id || !every))
+			{
+				long offset = (i == id) ? 0 : task.duration(); // to finish at another task's times
+				numStarts = addStart(numStarts, periodStart + other.delay() - offset, firstStart, lastStart);
+				if (m_highest[i] >= m_lowest[i])
+				{
+					numStarts = addStart(numStarts, periodStart + m_lowest[i] - offset, firstStart, lastStart);
+					numStarts = addStart(numStarts, periodStart + m_highest[i] - offset, firstStart, lastStart);
+				}
+			}
+		}
+
+		if (!every)
+			Arrays.sort(m_starts, 0, numStarts); // otherwise the edges come after every start tried
+
+		int result = 1;
+		for (int n = 1; n < numStarts; ++n)
+		{
+			if (m_starts[n] != m_starts[result - 1])
+				m_starts[result++] = m_starts[n];
+		}
+
+		return result;
+	}
+
+	private int addStart(int numStarts, long start, long firstStart, long lastStart)
+	{
+		int result = numStarts;
+		if (start > firstStart && start <= lastStart)
+			m_starts[result++] = start;
+
+		return result;
+	}
+
+	/**
+	 * Count a unit of work, and every so often check the clock.
+	 *
+	 * @return true if the search is to stop.
+	 */
+	private boolean step()
+	{
+		if (++m_steps % CHECK_INTERVAL == 0)
+		{
+			if (Thread.currentThread().isInterrupted())
+				throw new CancellationException("Jitter optimization was interrupted");
+
+			if (System.currentTimeMillis() >= m_stopTime)
+				m_stopped = true;
+		}
+
+		return m_stopped;
+	}
+
+	/**
+	 * @return the jitter that starting a job of the task at the relative start
+	 *         would add.
+	 */
+	private long added(int id, long relativeStart)
+	{
+		long result = 0;
+		if (relativeStart < m_lowest[id] && m_highest[id] >= m_lowest[id])
+			result = m_weights[id] * (m_lowest[id] - relativeStart);
+		else if (relativeStart > m_highest[id] && m_highest[id] >= m_lowest[id])
+			result = m_weights[id] * (relativeStart - m_highest[id]);
+
+		return result;
+	}
+
+	/**
+	 * Make the choice, remembering what it changes so that undo() can put it
+	 * back.
+	 *
+	 * @return the time the job finishes.
+	 */
+	private long place(int depth, Choice choice)
+	{
+		Task task = m_tasks[choice.m_taskId];
+		int id = choice.m_taskId;
+		long relativeStart = choice.m_start - (task.nextDeadline() - task.deadline());
+
+		m_previousLowest[depth] = m_lowest[id];
+		m_previousHighest[depth] = m_highest[id];
+		m_previousJitter[depth] = m_jitter;
+		m_previousLaunch[depth] = task.launch(choice.m_start);
+
+		m_lowest[id] = Math.min(m_lowest[id], relativeStart);
+		m_highest[id] = Math.max(m_highest[id], relativeStart);
+		m_jitter += choice.m_added;
+
+		return choice.m_start + task.duration();
+	}
+
+	private void undo(int depth)
+	{
+		Choice choice = m_choiceSets[depth][m_path[depth]];
+		int id = choice.m_taskId;
+
+		m_tasks[id].launch(m_previousLaunch[depth]);
+		m_lowest[id] = m_previousLowest[depth];
+		m_highest[id] = m_previousHighest[depth];
+		m_jitter = m_previousJitter[depth];
+	}
+
+	/**
+	 * @return the jobs placed so far, with Idle tasks filling the gaps and
+	 *         the rest of the hyperperiod.
+	 */
+	private Task[] schedule(int numJobs)
+	{
+		List<Task> schedule = new ArrayList<Task>();
+
+		long now = 0;
+		for (int depth = 0; depth < numJobs; ++depth)
+		{
+			Choice choice = m_choiceSets[depth][m_path[depth]];
+			Task task = m_tasks[choice.m_taskId];
+			if (choice.m_start > now)
+				schedule.add(Task.newIdleTask(choice.m_start - now));
+			schedule.add(task);
+			now = choice.m_start + task.duration();
+		}
+		if (now < m_hyperperiod)
+			schedule.add(Task.newIdleTask(m_hyperperiod - now));
+
+		Task[] result = new Task[schedule.size()];
+		schedule.toArray(result);
+
+		return result;
+	}
+
+	/**
+	 * The next job of each task can start no earlier than its release or now,
+	 * so its relative start is at least that much. This never overestimates
+	 * the jitter of a finished schedule.
+	 *
+	 * @return the least jitter that any schedule finished from here could
+	 *         have, or Long.MAX_VALUE if a pending job can no longer meet its
+	 *         deadline.
+	 */
+	private long lowerBound(long now)
+	{
+		long result = m_jitter;
+
+		for (int i = 0; result < Long.MAX_VALUE && i < m_tasks.length; ++i)
+		{
+			Task task = m_tasks[i];
+			long periodStart = task.nextDeadline() - task.deadline();
+			if (periodStart < m_hyperperiod)
+			{
+				if (now >= m_hyperperiod || task.nextDeadline() - task.duration() < now)
+					result = Long.MAX_VALUE;
+				else if (m_highest[i] >= m_lowest[i])
+				{
+					long earliestStart = Math.max(task.delay(), now - periodStart);
+					if (earliestStart > m_highest[i])
+						result += m_weights[i] * (earliestStart - m_highest[i]);
+				}
+			}
+		}
+
+		return result;
+	}
+
+	/**
+	 * One way to go on: a task's next job, and the time it starts.
+	 */
+	private static class Choice
+	{
+		private final int m_taskId;
+		private final long m_start;
+		private final long m_added; // to the jitter
+		private final long m_deadline;
+
+		Choice(int taskId, long start, long added, long deadline)
+		{
+			m_taskId = taskId;
+			m_start = start;
+			m_added = added;
+			m_deadline = deadline;
+		}
+	}
+
+}
@@ -0,0 +1,119 @@
+package khopps.msse;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * JobOrder is the order in which a schedule runs its jobs: the task id of
+ * each job, leaving out the Idle tasks, and the time it starts.
+ *
+ * The order alone is enough to schedule a workload that differs only in its
+ * durations or deadlines, with each job run as early as its release allows.
+ *
+ * @author khopps
+ *
+ */
+class JobOrder
+{
+	private final int[] m_taskIds;
+	private final long[] m_starts;
+
+	/**
+	 * @param workload
+	 * @param schedule
+	 *            is a schedule for the workload.
+	 */
+	JobOrder(Workload workload, Task[] schedule)
+	{
+		int numJobs = 0;
+		for (Task task : schedule)
+		{
+			if (!task.isIdleTask())
+				++numJobs;
+		}
+
+		m_taskIds = new int[numJobs];
+		m_starts = new long[numJobs];
+
+		long now = 0;
+		int job = 0;
+		for (Task task : schedule)
+		{
+			if (!task.isIdleTask())
+			{
+				m_taskIds[job] = workload.indexOf(task);
+				m_starts[job] = now;
+				++job;
+			}
+			now += task.duration();
+		}
+	}
+
+	/**
+	 * @return the number of jobs.
+	 */
+	int size()
+	{
+		return m_taskIds.length;
+	}
+
+	/**
+	 * @return the index in the workload of the job's task.
+	 */
+	int taskId(int job)
+	{
+		return m_taskIds[job];
+	}
+
+	/**
+	 * @return the time the job starts.
+	 */
+	long start(int job)
+	{
+		return m_starts[job];
+	}
+
+	/**
+	 * Run the jobs in this order, each as early as its release allows, with
+	 * the tasks of the workload given.
+	 *
+	 * @param workload
+	 *            has the same tasks and periods as the workload of the
+	 *            schedule, and may differ in durations and deadlines.
+	 * @return the schedule, if every job meets its deadline, or null.
+	 */
+	Task[] retime(Workload workload)
+	{
+		Task[] tasks = workload.tasks();
+		long[] runs = new long[tasks.length]; // jobs of each task so far
+
+		List<Task> schedule = new ArrayList<Task>();
+		long now = 0;
+		boolean feasible = true;
+		for (int job = 0; feasible && job < m_taskIds.length; ++job)
+		{
+			Task task = tasks[m_taskIds[job]];
+			long periodStart = runs[m_taskIds[job]]++ * task.period();
+			long start = Math.max(now, periodStart + task.delay());
+			if (start > now)
+				schedule.add(Task.newIdleTask(start - now));
+			schedule.add(task);
+			now = start + task.duration();
+			feasible = now <= periodStart + task.deadline();
+		}
+
+		long hyperperiod = Scheduler.hyperperiod(tasks);
+		if (now < hyperperiod)
+			schedule.add(Task.newIdleTask(hyperperiod - now));
+
+		Task[] result = null;
+		if (feasible)
+		{
+			result = new Task[schedule.size()];
+			schedule.toArray(result);
+		}
+
+		return result;
+	}
+
+}
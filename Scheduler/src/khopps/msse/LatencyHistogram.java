@@ -0,0 +1,164 @@
+package khopps.msse;
+
+import java.util.Arrays;
+
+/**
+ * LatencyHistogram counts non-negative values, such as nanosecond latencies,
+ * in log-linear buckets in the style of HdrHistogram. Values below 64 are
+ * counted exactly; larger values are counted with a relative error under
+ * 1/32. Recording a value does no allocation.
+ *
+ * This is not thread-safe. Read it from another thread only after the
+ * recording thread has finished.
+ *
+ * @author khopps
+ *
+ */
+public class LatencyHistogram
+{
+	private static final int SUB_BITS = 6; // 2^SUB_BITS exact values, then 2^(SUB_BITS-1) per power of two
+	private static final int SUB_COUNT = 1 << SUB_BITS;
+	private static final int HALF_COUNT = SUB_COUNT / 2;
+	private static final int NUM_BUCKETS = SUB_COUNT + (63 - SUB_BITS) * HALF_COUNT;
+
+	private final long[] m_counts = new long[NUM_BUCKETS];
+	private long m_count = 0;
+	private long m_total = 0;
+	private long m_min = Long.MAX_VALUE;
+	private long m_max = 0;
+
+	/**
+	 * @param value
+	 *            negative values are counted as zero.
+	 */
+	public void record(long value)
+	{
+		if (value < 0)
+			value = 0;
+
+		++m_counts[index(value)];
+		++m_count;
+		m_total += value;
+		if (m_min > value)
+			m_min = value;
+		if (m_max < value)
+			m_max = value;
+	}
+
+	public void reset()
+	{
+		Arrays.fill(m_counts, 0);
+		m_count = 0;
+		m_total = 0;
+		m_min = Long.MAX_VALUE;
+		m_max = 0;
+	}
+
+	public long count()
+	{
+		return m_count;
+	}
+
+	/**
+	 * @return the smallest value recorded, or zero if none
+	 */
+	public long min()
+	{
+		return (m_count == 0) ? 0 : m_min;
+	}
+
+	public long max()
+	{
+		return m_max;
+	}
+
+	public double mean()
+	{
+		return (m_count == 0) ? 0.0 : (double)m_total / m_count;
+	}
+
+	/**
+	 * @param percentile
+	 *            from 0 to 100
+	 * @return the largest value in the bucket holding that percentile, but no
+	 *         more than max()
+	 */
+	public long valueAtPercentile(double percentile)
+	{
+		long result = 0;
+
+		if (m_count > 0)
+		{
+			long rank = (long)Math.ceil(percentile / 100.0 * m_count);
+			rank = Math.max(1, Math.min(m_count, rank));
+
+			long seen = 0;
+			int i = 0;
+			while (seen + m_counts[i] < rank)
+				seen += m_counts[i++];
+
+			result = Math.min(m_max, highestValue(i));
+		}
+
+		return result;
+	}
+
+	private static int index(long value)
+	{
+		int result;
+
+		if (value < SUB_COUNT)
+			result = (int)value;
+		else
+		{
+			int shift = 63 - Long.numberOfLeadingZeros(value) - (SUB_BITS - 1);
+			int sub = (int)(value >>> shift); // HALF_COUNT <= sub < SUB_COUNT
+			result = SUB_COUNT + (shift - 1) * HALF_COUNT + (sub - HALF_COUNT);
+		}
+
+		return result;
+	}
+
+	private static long highestValue(int index)
+	{
+		long result;
+
+		if (index < SUB_COUNT)
+			result = index;
+		else
+		{
+			int shift = (index - SUB_COUNT) / HALF_COUNT + 1;
+			long sub = (index - SUB_COUNT) % HALF_COUNT + HALF_COUNT;
+			result = ((sub + 1) << shift) - 1;
+		}
+
+		return result;
+	}
+
+	@Override
+	public String toString()
+	{
+		StringBuffer sb = new StringBuffer();
+
+		sb.append('{');
+		sb.append("count=");
+		sb.append(m_count);
+		sb.append(", min=");
+		sb.append(min());
+		sb.append(", mean=");
+		sb.append(String.format("%.1f", mean()));
+		sb.append(", p50=");
+		sb.append(valueAtPercentile(50));
+		sb.append(", p99=");
+		sb.append(valueAtPercentile(99));
+		sb.append(", p99.9=");
+		sb.append(valueAtPercentile(99.9));
+		sb.append(", max=");
+		sb.append(m_max);
+		sb.append('}');
+
+		String result = sb.toString();
+		return result;
+	}
+
+}
@@ -7,6 +7,8 @@ public class MathUtils
 	 * @param x
 	 * @param y
 	 * @return least common multiple of x and y (0 if either is zero)
+	 * @throws ArithmeticException
+	 *             if the result overflows
 	 */
 	public static int lcm(int x, int y)
 	{
@@ -39,6 +41,12 @@ public class MathUtils
 		return result;
 	}
 
+	/**
+	 * @param values
+	 * @return least common multiple of the values (0 if any is zero)
+	 * @throws ArithmeticException
+	 *             if the result overflows
+	 */
 	public static int lcm(int[] values)
 	{
 		int result = 0;
@@ -76,7 +84,7 @@ public class MathUtils
 	private static int lcmPositives(int[] positives)
 	{
 		int result = positives[0];
-		for (int i = 1; result > 1 && i < positives.length; ++i)
+		for (int i = 1; result > 0 && i < positives.length; ++i)
 			result = lcmPositive(positives[i], result);
 		return result;
 	}
@@ -104,8 +112,12 @@ public class MathUtils
 
 	private static int lcmPositive(int x, int y)
 	{
-		int gcd = gcdPositive(x, y);
-		int result = (x / gcd) * y;
+		int result = 0;
+		if (x > 0 && y > 0)
+		{
+			int gcd = gcdPositive(x, y);
+			result = Math.multiplyExact(x / gcd, y);
+		}
 		return result;
 	}
 
@@ -125,6 +137,8 @@ public class MathUtils
 	 * @param x
 	 * @param y
 	 * @return least common multiple of x and y (0 if either is zero)
+	 * @throws ArithmeticException
+	 *             if the result overflows
 	 */
 	public static long lcm(long x, long y)
 	{
@@ -157,6 +171,12 @@ public class MathUtils
 		return result;
 	}
 
+	/**
+	 * @param values
+	 * @return least common multiple of the values (0 if any is zero)
+	 * @throws ArithmeticException
+	 *             if the result overflows
+	 */
 	public static long lcm(long[] values)
 	{
 		long result = 0;
@@ -194,7 +214,7 @@ public class MathUtils
 	private static long lcmPositives(long[] positives)
 	{
 		long result = positives[0];
-		for (int i = 1; result > 1 && i < positives.length; ++i)
+		for (int i = 1; result > 0 && i < positives.length; ++i)
 			result = lcmPositive(positives[i], result);
 		return result;
 	}
@@ -222,8 +242,12 @@ public class MathUtils
 
 	private static long lcmPositive(long x, long y)
 	{
-		long gcd = gcdPositive(x, y);
-		long result = (x / gcd) * y;
+		long result = 0;
+		if (x > 0 && y > 0)
+		{
+			long gcd = gcdPositive(x, y);
+			result = Math.multiplyExact(x / gcd, y);
+		}
 		return result;
 	}
 
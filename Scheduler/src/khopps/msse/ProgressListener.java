@@ -0,0 +1,24 @@
+package khopps.msse;
+
+/**
+ * A ProgressListener is told how a Scheduler's search is going.
+ * 
+ * @author khopps
+ * 
+ */
+public interface ProgressListener
+{
+
+	/**
+	 * @param nodes
+	 *            is the number of search nodes explored so far.
+	 * @param now
+	 *            is the time reached by the schedule currently being tried.
+	 * @param best
+	 *            is the furthest time any schedule tried has reached.
+	 * @param hyperperiod
+	 *            is the time at which the schedule is complete.
+	 */
+	public void progress(long nodes, long now, long best, long hyperperiod);
+
+}
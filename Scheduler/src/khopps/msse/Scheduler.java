@@ -1,7 +1,10 @@
 package khopps.msse;
 
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.List;
 import java.util.Stack;
+import java.util.concurrent.CancellationException;
 
 /**
  * Scheduler will generate a static schedule for a set of tasks.
@@ -11,12 +14,153 @@ import java.util.Stack;
  */
 public class Scheduler
 {
+	private static final int CHECK_INTERVAL = 1024; // nodes between checks for interrupts and checkpoints
+
+	/**
+	 * The largest number of jobs a hyperperiod may hold. Every job is a level
+	 * of the search and an entry in the schedule.
+	 */
+	public static final long MAX_JOBS = 1 << 24;
+
+	private Checkpointer m_checkpointer = null;
+	private Workload m_workload = null;
+	private long m_signature;
+	private long m_hyperperiod;
+	private long m_nodes;
+	private long m_best; // the furthest into the hyperperiod the search has reached
+	private ProgressListener m_progressListener = null;
+	private int[] m_path = new int[64]; // the choice index taken at each depth
+	private int[] m_limit = new int[64]; // one past the last choice to try at each depth
+	private Task[][] m_choiceSets = new Task[64][]; // the choices available at each depth
+	private long[] m_start = new long[64]; // the start time of the decision at each depth
+	private long[] m_previousLaunch = new long[64]; // of the choice being tried at each depth
+	private Task[] m_waits = new Task[64]; // the choice to wait at each depth, if there is one
+	private long[] m_waitLimits = new long[64]; // passed on by a wait at each depth
+	private long[][] m_states = new long[64][]; // to remember if the decision at each depth fails
+	private boolean[] m_waited = new boolean[64]; // whether the decision at each depth follows a wait
+	private boolean m_insertedIdleTime = false;
+	private FailedStates m_sharedFailedStates = null; // kept from one solve to the next
+	private FailedStates m_failedStates = null;
+	private FailedStates.Limits m_limits; // of the workload, as m_failedStates knows it
+	private Checkpoint m_resume = null; // replayed until the search first backtracks
+	private int m_fixedDepth = 0; // depths above this only follow m_resume
+	private int m_prefixDepth = -1; // depth at which makePrefixes() stops
+	private List<Checkpoint> m_prefixes = null;
+	private SplitHandler m_splitHandler = null;
+	private volatile boolean m_splitRequested = false;
+
+	/**
+	 * If a Checkpointer is given, the search frontier will be saved
+	 * periodically while a schedule is being made, so that the search can be
+	 * continued later with resumeSchedule(). The Checkpointer is not closed by
+	 * the Scheduler.
+	 * 
+	 * @param checkpointer
+	 *            or null to stop checkpointing.
+	 */
+	public void setCheckpointer(Checkpointer checkpointer)
+	{
+		m_checkpointer = checkpointer;
+	}
+
+	/**
+	 * Without inserted idle time, the search only idles when no task is ready
+	 * to run. In non-preemptive scheduling it is sometimes necessary to idle
+	 * while a task is ready, so that a job released soon after can meet a
+	 * tighter deadline, and so some feasible workloads are reported as
+	 * infeasible. With inserted idle time, waiting until the next release is
+	 * also a choice, which makes the search complete.
+	 * 
+	 * Only schedules in which no job could start earlier without delaying
+	 * another are searched, since one of them is feasible if any schedule is.
+	 * So the search never waits past the time the first job could finish, and
+	 * after a wait only the jobs it waited for are tried. The states that fail
+	 * are also remembered, and a state that has finished the same jobs as one
+	 * of them, no earlier, is not searched again.
+	 * 
+	 * @param insertedIdleTime
+	 */
+	public void setInsertedIdleTime(boolean insertedIdleTime)
+	{
+		m_insertedIdleTime = insertedIdleTime;
+	}
+
+	/**
+	 * With inserted idle time, the states that fail are normally forgotten at
+	 * the end of each solve. Given a FailedStates, they are kept in it instead,
+	 * and the states it already holds are not searched again. It may be shared
+	 * by the solves of workloads that differ only in durations and deadlines.
+	 * 
+	 * @param failedStates
+	 *            or null to start afresh with each solve.
+	 */
+	void setFailedStates(FailedStates failedStates)
+	{
+		m_sharedFailedStates = failedStates;
+	}
+
+	/**
+	 * The ProgressListener is told how the search is going every so often
+	 * while a schedule is being made. It is called on the searching thread.
+	 * 
+	 * @param progressListener
+	 *            or null
+	 */
+	public void setProgressListener(ProgressListener progressListener)
+	{
+		m_progressListener = progressListener;
+	}
+
+	/**
+	 * The SplitHandler receives the work given away by a search in response to
+	 * requestSplit().
+	 * 
+	 * @param splitHandler
+	 */
+	public void setSplitHandler(SplitHandler splitHandler)
+	{
+		m_splitHandler = splitHandler;
+	}
+
+	/**
+	 * Ask the search running in searchSubtree() to give away part of its
+	 * remaining work. This may be called from any thread. The search answers
+	 * at its next node by passing the prefixes of the subtrees it will no
+	 * longer explore to the SplitHandler; the list is empty if there is nothing
+	 * left to give away.
+	 */
+	public void requestSplit()
+	{
+		m_splitRequested = true;
+	}
 	
-	public static int hyperperiod(Task[] tasks)
+	/**
+	 * @param tasks
+	 * @return the least common multiple of the task periods
+	 * @throws IllegalArgumentException
+	 *             if the hyperperiod overflows, or holds more than MAX_JOBS
+	 *             jobs, so that no schedule for it could be made.
+	 */
+	public static long hyperperiod(Task[] tasks)
 	{
-		int hyperperiod = tasks[0].period();
-		for (int i = 1; i < tasks.length; ++i)
-			hyperperiod = MathUtils.lcm((int)tasks[i].period(), hyperperiod);
+		long hyperperiod = tasks[0].period();
+		long numJobs = 0;
+		try
+		{
+			for (int i = 1; i < tasks.length; ++i)
+				hyperperiod = MathUtils.lcm(tasks[i].period(), hyperperiod);
+
+			for (int i = 0; i < tasks.length; ++i)
+				numJobs = Math.addExact(numJobs, hyperperiod / tasks[i].period());
+		}
+		catch (ArithmeticException e)
+		{
+			throw new IllegalArgumentException("The hyperperiod of the tasks is too large to represent", e);
+		}
+
+		if (numJobs > MAX_JOBS)
+			throw new IllegalArgumentException("The hyperperiod " + hyperperiod + " holds " + numJobs
+					+ " jobs, more than can be scheduled");
 
 		return hyperperiod;
 	}
@@ -26,11 +170,111 @@ public class Scheduler
 	 * last for one hyperperiod, the least common multiple of all of the
 	 * individual task periods.
 	 * 
+	 * The search stops with a CancellationException if the calling thread is
+	 * interrupted.
+	 * 
+	 * Harmonic workloads are first given to the FrameScheduler, and only
+	 * searched if it cannot pack them.
+	 * 
 	 * @param tasks
 	 * @return the tasks, in order of their execution for the hyperperiod, or
 	 *         null if the tasks cannot be scheduled.
 	 */
 	public Task[] makeSchedule(Workload workload)
+	{
+		Task[] result = FrameScheduler.makeSchedule(workload);
+		if (result == null)
+			result = makeSchedule(workload, null, 0);
+
+		return result;
+	}
+
+	/**
+	 * This is makeSchedule() without the FrameScheduler, so the schedule is
+	 * always the first one the search finds.
+	 */
+	Task[] search(Workload workload)
+	{
+		return makeSchedule(workload, null, 0);
+	}
+
+	/**
+	 * This continues a search that was interrupted, starting from the frontier
+	 * recorded in the checkpoint. Subtrees the earlier search had already
+	 * exhausted are not explored again.
+	 * 
+	 * @param workload
+	 *            must be the same workload the checkpoint was taken from.
+	 * @param checkpoint
+	 *            must have been taken by a search with the same options.
+	 * @return the tasks, in order of their execution for the hyperperiod, or
+	 *         null if the tasks cannot be scheduled.
+	 */
+	public Task[] resumeSchedule(Workload workload, Checkpoint checkpoint)
+	{
+		if (checkpoint.signature() != workload.signature())
+			throw new IllegalArgumentException("Checkpoint was not taken from " + workload.name());
+		if (checkpoint.mode() != mode())
+			throw new IllegalArgumentException("Checkpoint was taken with different search options");
+
+		return makeSchedule(workload, checkpoint, 0);
+	}
+
+	/**
+	 * This searches only the subtree below a prefix from makePrefixes() (or
+	 * one given away after requestSplit()). Together, the subtrees of all of
+	 * the prefixes cover the whole search.
+	 * 
+	 * @param workload
+	 *            must be the same workload the prefix was made from.
+	 * @param prefix
+	 *            must have been made by a search with the same options.
+	 * @return the tasks, in order of their execution for the hyperperiod, or
+	 *         null if no schedule begins with the prefix.
+	 */
+	public Task[] searchSubtree(Workload workload, Checkpoint prefix)
+	{
+		if (prefix.signature() != workload.signature())
+			throw new IllegalArgumentException("Prefix was not made from " + workload.name());
+		if (prefix.mode() != mode())
+			throw new IllegalArgumentException("Prefix was made with different search options");
+
+		return makeSchedule(workload, prefix, prefix.depth());
+	}
+
+	/**
+	 * This enumerates the search tree down to the given depth, adding the
+	 * prefix of every node at that depth to the list, in search order. A
+	 * schedule shorter than the depth is returned as soon as it is found, in
+	 * which case the list is incomplete.
+	 * 
+	 * @param workload
+	 * @param depth
+	 *            is the number of decisions in each prefix.
+	 * @param prefixes
+	 *            receives the prefixes.
+	 * @return a schedule if one was found above the depth, null otherwise.
+	 */
+	public Task[] makePrefixes(Workload workload, int depth, List<Checkpoint> prefixes)
+	{
+		Task[] result;
+
+		m_prefixDepth = depth;
+		m_prefixes = prefixes;
+		try
+		{
+			result = makeSchedule(workload, null, 0);
+		}
+		finally
+		{
+			m_prefixDepth = -1;
+			m_prefixes = null;
+		}
+
+		return result;
+	}
+
+	private Task[] makeSchedule(Workload workload, Checkpoint resume, int fixedDepth)
 	{
 		Stack<Task> schedule = null;
 
@@ -38,15 +282,49 @@ public class Scheduler
 
 		if (tasks.length > 0)
 		{
-			int hyperperiod = hyperperiod(tasks);
+			long hyperperiod = hyperperiod(tasks);
+
+			for (Task task : tasks)
+				task.reset();
+
+			m_workload = workload;
+			m_signature = workload.signature();
+			m_hyperperiod = hyperperiod;
+			m_nodes = (resume == null) ? 0 : resume.nodes();
+			m_best = 0;
+			m_resume = resume;
+			m_fixedDepth = fixedDepth;
+			m_splitRequested = false;
+
+			/*
+			 * A failed state is only known to have no schedule below it if its
+			 * whole subtree was searched by us.
+			 */
+			boolean wholeTree = fixedDepth == 0 && m_prefixDepth < 0 && m_splitHandler == null;
+			if (m_insertedIdleTime && wholeTree)
+			{
+				m_failedStates = (m_sharedFailedStates == null) ? new FailedStates() : m_sharedFailedStates;
+				m_limits = new FailedStates.Limits(tasks, hyperperiod);
+			}
 
 			/*
-			 * Now attempt to schedule the task, using the recursive helper
-			 * function makeSchedule().
+			 * Now attempt to schedule the task, using the helper function
+			 * makeSchedule().
 			 */
 			schedule = new Stack<Task>();
-			if (!makeSchedule(schedule, workload, 0, hyperperiod))
-				schedule = null;
+			try
+			{
+				if (!makeSchedule(schedule, tasks, hyperperiod))
+					schedule = null;
+			}
+			finally
+			{
+				m_workload = null;
+				m_resume = null;
+				m_fixedDepth = 0;
+				m_failedStates = null;
+				m_limits = null;
+			}
 		}
 
 		Task[] result = null;
@@ -60,73 +338,458 @@ public class Scheduler
 	}
 
 	/**
-	 * This is a recursive function that will attempt to schedule tasks from now
-	 * until the end of a certain period of time.
+	 * This will attempt to schedule tasks from the start of the schedule until
+	 * the end of a certain period of time. Every decision is a level of the
+	 * search, and a hyperperiod may hold millions of them, so the search keeps
+	 * its own stack of decisions rather than recursing.
+	 * 
+	 * The decision at each depth is described by m_choiceSets, m_path,
+	 * m_limit and m_start, and by the arrays below them. Trying a choice either
+	 * settles it at once, or opens a decision one level deeper with enter().
+	 * When a decision has no choices left it is closed with leave(), and the
+	 * failure is handed to the decision above it.
 	 * 
 	 * @param schedule
 	 *            is the schedule as it exists thus far, and the result if
 	 *            successful.
 	 * @param tasks
 	 *            is the set of Tasks that need to fill the schedule.
-	 * @param now
-	 *            is the current time within the schedule.
 	 * @param end
 	 *            is the time when the schedule ends.
 	 * @return true if the schedule is possible, false if not.
 	 */
-	private boolean makeSchedule(Stack<Task> schedule, Workload workload, int now, int end)
+	private boolean makeSchedule(Stack<Task> schedule, Task[] tasks, long end)
 	{
-		boolean result = false;
+		if (!enter(schedule, tasks, 0, end, Long.MIN_VALUE))
+			return false;
 
-		Task[] tasks = workload.tasks();
+		int depth = 0; // of the deepest open decision
+		boolean tried = false; // whether the current choice there has failed
+		while (depth >= 0)
+		{
+			if (tried)
+			{
+				/*
+				 * Undo our choice by popping it off the end of the schedule
+				 * and resetting the tasks previous launch time to what it was
+				 * before. This is so that it can correctly calculate its next
+				 * deadline. Any replay is over now that a subtree has been
+				 * exhausted.
+				 */
+				m_resume = null;
+				Task task = schedule.pop();
+				task.launch(m_previousLaunch[depth]);
+				tried = false;
+			}
+
+			int i = ++m_path[depth];
+			if (i >= m_limit[depth])
+			{
+				leave(depth--);
+				tried = true;
+				continue;
+			}
+
+			/*
+			 * Given the list of choices, we make the next choice and see if we
+			 * can then schedule the remaining tasks. If so, we are finished.
+			 * If not, we undo that choice and try the next choice.
+			 */
+			long now = m_start[depth];
+			Task task = m_choiceSets[depth][i];
+			schedule.push(task); // Add this task to the schedule.
+			m_previousLaunch[depth] = task.launch(now); // Record this task's launch time.
+			long finish = now + task.duration();
+			if (finish >= end) // Are we done making the schedule?
+			{
+				/*
+				 * A task that misses a deadline is never eligible again, so
+				 * the schedule is only a success if every task ran in its
+				 * last period.
+				 */
+				if (ranInLastPeriod(tasks, end))
+					return true; // success!
+
+				tried = true;
+			}
+			else
+			{
+				/*
+				 * Now we go deeper, attempting to finish the remainder of the
+				 * schedule.
+				 */
+				long waitLimit = (task == m_waits[depth]) ? m_waitLimits[depth] : Long.MIN_VALUE;
+				if (enter(schedule, tasks, finish, end, waitLimit))
+					++depth;
+				else
+					tried = true;
+			}
+		}
+
+		return false;
+	}
+
+	/**
+	 * Open the decision at the depth of the schedule so far, ready for its
+	 * first choice to be tried.
+	 * 
+	 * @param now
+	 *            is the current time within the schedule.
+	 * @param waitLimit
+	 *            is the time before which further waiting may be chosen, if
+	 *            the last decision was to wait. Otherwise it is in the past.
+	 * @return false if the decision failed without any choice being tried.
+	 */
+	private boolean enter(Stack<Task> schedule, Task[] tasks, long now, long end, long waitLimit)
+	{
 		Task[] choices = new Task[tasks.length];
+		int depth = schedule.size();
+
+		if (m_best < now)
+			m_best = now;
+
+		if (++m_nodes % CHECK_INTERVAL == 0)
+		{
+			if (Thread.currentThread().isInterrupted())
+				throw new CancellationException("Schedule search was interrupted");
+
+			if (m_progressListener != null)
+				m_progressListener.progress(m_nodes, now, m_best, m_hyperperiod);
+
+			if (m_checkpointer != null && m_checkpointer.isDue())
+				m_checkpointer.submit(checkpoint(schedule));
+		}
+
+		if (depth == m_prefixDepth)
+		{
+			m_prefixes.add(checkpoint(schedule));
+			return false;
+		}
+
+		if (m_splitRequested && m_splitHandler != null)
+			donate(schedule);
+
+		/*
+		 * A job that can no longer meet its deadline dooms every schedule
+		 * below this one, so there is no need to look.
+		 */
+		if (hasMissedJob(tasks, now))
+			return false;
+
+		/*
+		 * With inserted idle time, a state that finished the same jobs no
+		 * later than now, and failed, could have waited until now and done
+		 * anything we can. So we would fail too.
+		 */
+		long[] state = null;
+		if (m_failedStates != null)
+		{
+			state = state(tasks, now);
+			if (m_failedStates.hasFailed(state, m_limits))
+				return false;
+		}
+		boolean waited = waitLimit > now;
 
 		/*
 		 * First, get a list of choices -- tasks which are eligible to run at
 		 * this time. If no tasks are eligible now, a single Idle task is
 		 * returned, which is not one of the original set.
-		 * 
-		 * Given the list of choices, we make the first choice and see if we can
-		 * then schedule the remaining tasks. If so, we are finished. If not, we
-		 * undo that choice and try the next choice.
 		 */
 		int numChoices = getChoices(choices, tasks, now); // What tasks are eligible to run now.
-		boolean done = false;
-		for (int i = 0; !done && i < numChoices; ++i)
+
+		/*
+		 * With inserted idle time, we may also wait for the next release. No
+		 * job need start after the earliest time some job could finish, or
+		 * that job could have run first, so waiting stops there. After a
+		 * wait, only the jobs waited for are worth running.
+		 */
+		Task wait = null;
+		if (m_insertedIdleTime)
 		{
-			Task task = choices[i];
-			schedule.push(task); // Add this task to the schedule.
-			int previousLaunch = task.launch(now); // Record this task's launch time.
-			int finish = now + task.duration();
-			if (finish >= end) // Are we done making the schedule?
-			{
-				result = true; // success!
-				done = true;
-			}
+			if (waited)
+				numChoices = keepReleasedNow(choices, numChoices, now);
 			else
+				waitLimit = earliestFinish(tasks, now, end);
+
+			long nextRelease = nextRelease(tasks, now);
+			if (numChoices > 0 && !choices[0].isIdleTask() && nextRelease < Math.min(waitLimit, end))
 			{
-				/*
-				 * Now we recurse, attempting to finish the remainder of the
-				 * schedule. If successful, we're done. If unsuccessful, we
-				 * undo our choice and try again in the next loop.
-				 */
-				result = makeSchedule(schedule, workload, finish, end);
-				if (result)
-					done = true;
-				else
-				{
-					/*
-					 * Undo our choice by popping it off the end of the
-					 * schedule and resetting the tasks previous launch time
-					 * to what it was before. This is so that it can
-					 * correctly calculate its next deadline.
-					 */
-					schedule.pop();
-					task.launch(previousLaunch);
-				}
+				wait = Task.newIdleTask(nextRelease - now);
+				choices[numChoices++] = wait; // sorts after the tasks
 			}
 		}
 
+		/*
+		 * When resuming from a checkpoint, the choices to the left of the
+		 * checkpointed path have already been exhausted, so we start from the
+		 * choice that was being explored when the checkpoint was taken.
+		 */
+		int first = 0;
+		if (m_resume != null && depth < m_resume.depth())
+			first = replay(depth, choices, numChoices, now);
+
+		/*
+		 * Within a fixed prefix only the replayed choice is tried. The limit
+		 * may also be lowered by donate() while we are deeper in the search.
+		 */
+		ensureDepth(depth);
+		m_choiceSets[depth] = choices;
+		m_path[depth] = first - 1;
+		m_limit[depth] = (depth < m_fixedDepth) ? first + 1 : numChoices;
+		m_start[depth] = now;
+		m_waits[depth] = wait;
+		m_waitLimits[depth] = waitLimit;
+		m_states[depth] = state;
+		m_waited[depth] = waited;
+
+		/*
+		 * With no choices at all, some job has missed its deadline.
+		 */
+		if (numChoices == 0)
+		{
+			leave(depth);
+			return false;
+		}
+
+		return true;
+	}
+
+	/**
+	 * Close the decision at the given depth, every choice tried there having
+	 * failed.
+	 */
+	private void leave(int depth)
+	{
+		/*
+		 * After a wait, only some of the choices were tried, so the state
+		 * itself has not been shown to fail.
+		 */
+		if (m_states[depth] != null && !m_waited[depth])
+			m_failedStates.fail(m_states[depth], m_limits);
+
+		m_choiceSets[depth] = null;
+		m_waits[depth] = null;
+		m_states[depth] = null;
+	}
+
+	/**
+	 * @return the time, followed by the number of periods each task has
+	 *         finished.
+	 */
+	private static long[] state(Task[] tasks, long now)
+	{
+		long[] result = new long[tasks.length + 1];
+
+		result[0] = now;
+		for (int i = 0; i < tasks.length; ++i)
+			result[i + 1] = (tasks[i].lastLaunch() + tasks[i].period()) / tasks[i].period();
+
+		return result;
+	}
+
+	/**
+	 * @return true if some task's next job cannot finish by its deadline
+	 *         unless it started before now.
+	 */
+	private static boolean hasMissedJob(Task[] tasks, long now)
+	{
+		boolean result = false;
+
+		for (int i = 0; !result && i < tasks.length; ++i)
+			result = tasks[i].nextDeadline() - tasks[i].duration() < now;
+
+		return result;
+	}
+
+	/**
+	 * @return the earliest time that a job of the schedule, ready or not,
+	 *         could finish.
+	 */
+	private static long earliestFinish(Task[] tasks, long now, long end)
+	{
+		long result = Long.MAX_VALUE;
+
+		for (Task task : tasks)
+		{
+			long start = now + task.mustWait(now);
+			if (start < end)
+				result = Math.min(result, start + task.duration());
+		}
+
+		return result;
+	}
+
+	/**
+	 * @return the next time after now that a job is released, or
+	 *         Long.MAX_VALUE if there is none.
+	 */
+	private static long nextRelease(Task[] tasks, long now)
+	{
+		long result = Long.MAX_VALUE;
+
+		for (Task task : tasks)
+		{
+			long wait = task.mustWait(now);
+			if (wait > 0)
+				result = Math.min(result, now + wait);
+		}
+
+		return result;
+	}
+
+	/**
+	 * After waiting, only the jobs released by the wait's end are worth
+	 * running. A job that was ready before the wait would have done better to
+	 * run instead of it.
+	 * 
+	 * @return the new number of choices
+	 */
+	private static int keepReleasedNow(Task[] choices, int numChoices, long now)
+	{
+		int result = 0;
+
+		for (int i = 0; i < numChoices; ++i)
+		{
+			Task task = choices[i];
+			long release = task.nextDeadline() - task.deadline() + task.delay();
+			if (task.isIdleTask() || release >= now)
+				choices[result++] = task;
+		}
+
+		return result;
+	}
+
+	private static boolean ranInLastPeriod(Task[] tasks, long end)
+	{
+		boolean result = true;
+
+		for (int i = 0; result && i < tasks.length; ++i)
+			result = tasks[i].lastLaunch() >= end - tasks[i].period();
+
+		return result;
+	}
+
+	private void ensureDepth(int depth)
+	{
+		if (depth == m_path.length)
+		{
+			m_path = Arrays.copyOf(m_path, 2 * depth);
+			m_limit = Arrays.copyOf(m_limit, 2 * depth);
+			m_choiceSets = Arrays.copyOf(m_choiceSets, 2 * depth);
+			m_start = Arrays.copyOf(m_start, 2 * depth);
+			m_previousLaunch = Arrays.copyOf(m_previousLaunch, 2 * depth);
+			m_waits = Arrays.copyOf(m_waits, 2 * depth);
+			m_waitLimits = Arrays.copyOf(m_waitLimits, 2 * depth);
+			m_states = Arrays.copyOf(m_states, 2 * depth);
+			m_waited = Arrays.copyOf(m_waited, 2 * depth);
+		}
+	}
+
+	/**
+	 * Give away the untried choices at the shallowest depth that has any, so
+	 * that the donated subtrees are as large as possible. This search will not
+	 * try those choices itself.
+	 */
+	private void donate(Stack<Task> schedule)
+	{
+		m_splitRequested = false;
+
+		List<Checkpoint> donations = new ArrayList<Checkpoint>();
+		int depth = schedule.size();
+		for (int d = m_fixedDepth; donations.isEmpty() && d < depth; ++d)
+		{
+			for (int i = m_path[d] + 1; i < m_limit[d]; ++i)
+				donations.add(sibling(schedule, d, i));
+			m_limit[d] = Math.min(m_limit[d], m_path[d] + 1);
+		}
+
+		m_splitHandler.donate(donations);
+	}
+
+	/**
+	 * @return the prefix that follows the current path down to the given
+	 *         depth, and then takes another choice there.
+	 */
+	private Checkpoint sibling(Stack<Task> schedule, int depth, int choice)
+	{
+		int[] choices = Arrays.copyOf(m_path, depth + 1);
+		int[] taskIds = new int[depth + 1];
+		long[] starts = new long[depth + 1];
+
+		long now = 0;
+		for (int i = 0; i < depth; ++i)
+		{
+			Task task = schedule.get(i);
+			taskIds[i] = taskId(task);
+			starts[i] = now;
+			now += task.duration();
+		}
+		choices[depth] = choice;
+		taskIds[depth] = taskId(m_choiceSets[depth][choice]);
+		starts[depth] = now;
+
+		Checkpoint result = new Checkpoint(m_signature, m_hyperperiod, mode(), m_nodes, choices, taskIds, starts);
+		return result;
+	}
+
+	/**
+	 * @return the choice index recorded by the checkpoint being resumed for
+	 *         this depth, after checking that it leads to the same task at the
+	 *         same time.
+	 */
+	private int replay(int depth, Task[] choices, int numChoices, long now)
+	{
+		int result = m_resume.choice(depth);
+
+		if (result >= numChoices || m_resume.start(depth) != now
+				|| m_resume.taskId(depth) != taskId(choices[result]))
+			throw new IllegalStateException("Checkpoint does not match the search at depth " + depth);
+
+		return result;
+	}
+
+	private Checkpoint checkpoint(Stack<Task> schedule)
+	{
+		int depth = schedule.size();
+		int[] choices = Arrays.copyOf(m_path, depth);
+		int[] taskIds = new int[depth];
+		long[] starts = new long[depth];
+
+		long now = 0;
+		for (int i = 0; i < depth; ++i)
+		{
+			Task task = schedule.get(i);
+			taskIds[i] = taskId(task);
+			starts[i] = now;
+			now += task.duration();
+		}
+
+		Checkpoint result = new Checkpoint(m_signature, m_hyperperiod, mode(), m_nodes, choices, taskIds, starts);
+		return result;
+	}
+
+	/**
+	 * @return the search options in effect, as Checkpoint mode bits.
+	 */
+	private int mode()
+	{
+		int result = 0;
+		if (m_insertedIdleTime)
+			result |= Checkpoint.INSERTED_IDLE_TIME;
+
+		return result;
+	}
+
+	/**
+	 * @return the index of the task within the workload being scheduled, or
+	 *         Checkpoint.IDLE_ID for an Idle task.
+	 */
+	private int taskId(Task task)
+	{
+		int result = m_workload.indexOf(task);
+		if (result < 0)
+			result = Checkpoint.IDLE_ID;
+
 		return result;
 	}
 
@@ -142,7 +805,7 @@ public class Scheduler
 	 *            is the current time
 	 * @return an array of tasks that are eligible to run now. Never null.
 	 */
-	private int getChoices(Task[] choices, Task[] tasks, int now)
+	private int getChoices(Task[] choices, Task[] tasks, long now)
 	{
 		int numChoices = 0;
 
@@ -152,11 +815,11 @@ public class Scheduler
 		 * task may run is maintained. After the loop, if the minimum wait time
 		 * is positive, it means that no tasks are eligible to run at this time.
 		 */
-		int minWait = Integer.MAX_VALUE;
+		long minWait = Long.MAX_VALUE;
 		for (int i = 0; i < tasks.length; ++i)
 		{
 			Task task = tasks[i];
-			int wait = task.mustWait(now);
+			long wait = task.mustWait(now);
 			if (minWait > wait)
 				minWait = wait;
 			/*
@@ -0,0 +1,218 @@
+package khopps.msse;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Flow;
+import java.util.concurrent.Future;
+import java.util.concurrent.SubmissionPublisher;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
+import java.util.function.BiPredicate;
+
+/**
+ * SchedulerService makes schedules asynchronously. Each workload submitted is
+ * solved on one of the service's threads, and the caller gets a
+ * CompletableFuture of the schedule right away. Cancelling the future stops
+ * the search. Progress may be followed through a Flow.Subscriber, which is
+ * sent a SearchProgress no more often than the service's progress interval.
+ *
+ * The service solves a private copy of each workload, so the same workload may
+ * be submitted more than once at a time. The schedule returned refers to the
+ * tasks of the workload submitted, as Scheduler.makeSchedule() does.
+ *
+ * @author khopps
+ *
+ */
+public class SchedulerService
+{
+	/*
+	 * A subscriber that falls behind misses reports rather than holding up the
+	 * search.
+	 */
+	private static final BiPredicate<Flow.Subscriber<? super SearchProgress>, SearchProgress> DROP =
+			new BiPredicate<Flow.Subscriber<? super SearchProgress>, SearchProgress>()
+	{
+		@Override
+		public boolean test(Flow.Subscriber<? super SearchProgress> subscriber, SearchProgress progress)
+		{
+			return false;
+		}
+	};
+
+	private final ExecutorService m_executor;
+	private final long m_progressIntervalNanos;
+
+	/**
+	 * @param numThreads
+	 *            is the number of workloads solved at once.
+	 * @param progressIntervalMillis
+	 *            is the minimum time between progress reports for a solve.
+	 */
+	public SchedulerService(int numThreads, long progressIntervalMillis)
+	{
+		m_executor = Executors.newFixedThreadPool(numThreads);
+		m_progressIntervalNanos = TimeUnit.MILLISECONDS.toNanos(progressIntervalMillis);
+	}
+
+	/**
+	 * @param workload
+	 * @return the future schedule, which holds null if the tasks cannot be
+	 *         scheduled.
+	 */
+	public CompletableFuture<Task[]> submit(Workload workload)
+	{
+		return submit(workload, null);
+	}
+
+	/**
+	 * @param workload
+	 * @param subscriber
+	 *            receives the progress of the search, and is completed when
+	 *            the search ends. It may be null.
+	 * @return the future schedule, which holds null if the tasks cannot be
+	 *         scheduled.
+	 */
+	public CompletableFuture<Task[]> submit(final Workload workload,
+			Flow.Subscriber<? super SearchProgress> subscriber)
+	{
+		final CompletableFuture<Task[]> result = new CompletableFuture<Task[]>();
+		final SubmissionPublisher<SearchProgress> publisher = new SubmissionPublisher<SearchProgress>();
+		if (subscriber != null)
+			publisher.subscribe(subscriber);
+
+		final Future<?> search = m_executor.submit(new Runnable()
+		{
+			@Override
+			public void run()
+			{
+				solve(workload, result, publisher);
+			}
+		});
+
+		/*
+		 * CompletableFuture.cancel() does not interrupt anything, so the
+		 * search is interrupted here. The Scheduler notices the interrupt and
+		 * gives up. The publisher is closed here too, in case the search had
+		 * not started.
+		 */
+		result.whenComplete(new BiConsumer<Task[], Throwable>()
+		{
+			@Override
+			public void accept(Task[] schedule, Throwable failure)
+			{
+				if (result.isCancelled())
+				{
+					search.cancel(true);
+					publisher.closeExceptionally(new CancellationException("Schedule search was cancelled"));
+				}
+			}
+		});
+
+		return result;
+	}
+
+	/**
+	 * Stop accepting workloads, and interrupt the searches in progress.
+	 */
+	public void shutdownNow()
+	{
+		m_executor.shutdownNow();
+	}
+
+	/**
+	 * Stop accepting workloads, letting the searches in progress finish.
+	 */
+	public void shutdown()
+	{
+		m_executor.shutdown();
+	}
+
+	public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException
+	{
+		return m_executor.awaitTermination(timeout, unit);
+	}
+
+	private void solve(Workload workload, CompletableFuture<Task[]> result,
+			final SubmissionPublisher<SearchProgress> publisher)
+	{
+		try
+		{
+			if (!result.isDone())
+			{
+				Workload copy = workload.copy();
+
+				Scheduler scheduler = new Scheduler();
+				scheduler.setProgressListener(new ProgressListener()
+				{
+					private long m_nextReport = System.nanoTime();
+
+					@Override
+					public void progress(long nodes, long now, long best, long hyperperiod)
+					{
+						long time = System.nanoTime();
+						if (time - m_nextReport >= 0 && !publisher.isClosed())
+						{
+							m_nextReport = time + m_progressIntervalNanos;
+							try
+							{
+								publisher.offer(new SearchProgress(nodes, now, best, hyperperiod), DROP);
+							}
+							catch (IllegalStateException e)
+							{
+								// closed by a cancel; the interrupt will stop the search
+							}
+						}
+					}
+				});
+
+				Task[] schedule = scheduler.makeSchedule(copy);
+				result.complete(original(workload, copy, schedule));
+			}
+			publisher.close();
+		}
+		catch (CancellationException e)
+		{
+			result.cancel(false);
+			publisher.closeExceptionally(e);
+		}
+		catch (RuntimeException e)
+		{
+			result.completeExceptionally(e);
+			publisher.closeExceptionally(e);
+		}
+		catch (Error e)
+		{
+			/*
+			 * Callers and subscribers must hear of this too, or they would
+			 * wait forever. The error is thrown on, for the executor.
+			 */
+			result.completeExceptionally(e);
+			publisher.closeExceptionally(e);
+			throw e;
+		}
+	}
+
+	/**
+	 * @return the schedule, with the copied tasks replaced by the originals
+	 */
+	private static Task[] original(Workload workload, Workload copy, Task[] schedule)
+	{
+		Task[] result = null;
+
+		if (schedule != null)
+		{
+			Task[] tasks = workload.tasks();
+			result = new Task[schedule.length];
+			for (int i = 0; i < schedule.length; ++i)
+			{
+				int taskId = copy.indexOf(schedule[i]);
+				result[i] = (taskId < 0) ? schedule[i] : tasks[taskId];
+			}
+		}
+
+		return result;
+	}
+
+}
@@ -0,0 +1,68 @@
+package khopps.msse;
+
+/**
+ * SearchProgress is a report of how far a schedule search has got.
+ *
+ * @author khopps
+ *
+ */
+public class SearchProgress
+{
+	private final long m_nodes;
+	private final long m_now;
+	private final long m_best;
+	private final long m_hyperperiod;
+
+	public SearchProgress(long nodes, long now, long best, long hyperperiod)
+	{
+		m_nodes = nodes;
+		m_now = now;
+		m_best = best;
+		m_hyperperiod = hyperperiod;
+	}
+
+	/**
+	 * @return the number of search nodes explored so far
+	 */
+	public long nodes()
+	{
+		return m_nodes;
+	}
+
+	/**
+	 * @return how far through the hyperperiod the schedule currently being
+	 *         tried has got, from 0 to 1
+	 */
+	public double depth()
+	{
+		return (double)m_now / m_hyperperiod;
+	}
+
+	/**
+	 * @return how far through the hyperperiod any schedule tried has got,
+	 *         from 0 to 1
+	 */
+	public double bestDepth()
+	{
+		return (double)m_best / m_hyperperiod;
+	}
+
+	@Override
+	public String toString()
+	{
+		StringBuffer sb = new StringBuffer();
+
+		sb.append('{');
+		sb.append("nodes=");
+		sb.append(m_nodes);
+		sb.append(", depth=");
+		sb.append(String.format("%.3f", depth()));
+		sb.append(", bestDepth=");
+		sb.append(String.format("%.3f", bestDepth()));
+		sb.append('}');
+
+		String result = sb.toString();
+		return result;
+	}
+
+}
@@ -0,0 +1,306 @@
+package khopps.msse;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * SensitivityAnalyzer finds, for each task of a workload, the largest duration
+ * (WCET) the task could have with the workload still schedulable, holding the
+ * other tasks fixed. Each task's limit is found by a binary search over
+ * repeated solves, and the tasks are searched in parallel.
+ *
+ * The solves insert idle time, so each one finds a schedule if any exists.
+ * A job can always run in the place of a longer one, idling for the rest, so
+ * a task that is schedulable at some duration is schedulable at every shorter
+ * one, and the binary search finds the exact limit.
+ *
+ * Before solving from scratch, each probe tries to re-time the last schedule
+ * found for that task at a lower duration: the same jobs in the same order,
+ * with idle time inserted where needed. Only if that misses a deadline is the
+ * Scheduler run.
+ *
+ * The analysis stops when its time budget runs out; any task still being
+ * searched then is reported with the bounds found so far. The bounds returned
+ * are a snapshot taken then, and are not changed by searches still winding
+ * down. The budget starts with the solve of the workload as it is, and if
+ * even that does not finish in time, there are no bounds to report.
+ *
+ * @author khopps
+ *
+ */
+public class SensitivityAnalyzer
+{
+	private final int m_numThreads;
+	private final long m_budgetMillis;
+
+	/**
+	 * @param numThreads
+	 *            is the number of tasks searched at once.
+	 * @param budgetMillis
+	 *            is the time allowed for the whole analysis.
+	 */
+	public SensitivityAnalyzer(int numThreads, long budgetMillis)
+	{
+		m_numThreads = numThreads;
+		m_budgetMillis = budgetMillis;
+	}
+
+	/**
+	 * @param workload
+	 * @return the slack of each task, in workload order, or null if the
+	 *         workload cannot be scheduled as it is. If the budget runs out
+	 *         before that is known, the array is empty.
+	 */
+	public Slack[] analyze(final Workload workload) throws InterruptedException
+	{
+		long deadline = System.currentTimeMillis() + m_budgetMillis;
+
+		ExecutorService executor = Executors.newFixedThreadPool(m_numThreads);
+		try
+		{
+			Future<Task[]> solve = executor.submit(new Callable<Task[]>()
+			{
+				@Override
+				public Task[] call()
+				{
+					return newScheduler().makeSchedule(workload);
+				}
+			});
+
+			Task[] base;
+			try
+			{
+				base = solve.get(remaining(deadline), TimeUnit.MILLISECONDS);
+			}
+			catch (TimeoutException e)
+			{
+				return new Slack[0];
+			}
+			catch (ExecutionException e)
+			{
+				if (e.getCause() instanceof Error)
+					throw (Error)e.getCause();
+				throw (RuntimeException)e.getCause(); // the solve throws nothing checked
+			}
+			if (base == null)
+				return null;
+
+			final Task[] tasks = workload.tasks();
+			final JobOrder order = new JobOrder(workload, base);
+
+			final Slack[] result = new Slack[tasks.length];
+			List<Callable<Void>> searches = new ArrayList<Callable<Void>>();
+			for (int i = 0; i < tasks.length; ++i)
+			{
+				result[i] = new Slack(tasks[i], upperBound(tasks, i));
+
+				final int taskId = i;
+				searches.add(new Callable<Void>()
+				{
+					@Override
+					public Void call()
+					{
+						search(workload, taskId, order, result[taskId]);
+						return null;
+					}
+				});
+			}
+
+			executor.invokeAll(searches, remaining(deadline), TimeUnit.MILLISECONDS);
+
+			for (int i = 0; i < result.length; ++i)
+				result[i] = result[i].snapshot();
+
+			return result;
+		}
+		finally
+		{
+			executor.shutdownNow();
+		}
+	}
+
+	private static long remaining(long deadline)
+	{
+		return Math.max(0, deadline - System.currentTimeMillis());
+	}
+
+	private static Scheduler newScheduler()
+	{
+		Scheduler result = new Scheduler();
+		result.setInsertedIdleTime(true);
+
+		return result;
+	}
+
+	/**
+	 * Binary search for the largest feasible duration of one task. The slack
+	 * is narrowed after every probe, so it is correct whenever the search is
+	 * interrupted.
+	 */
+	private static void search(Workload workload, int taskId, JobOrder order, Slack slack)
+	{
+		Task task = workload.tasks()[taskId];
+
+		while (slack.lowerBound() < slack.upperBound())
+		{
+			long low = slack.lowerBound();
+			long high = slack.upperBound();
+			long mid = low + (high - low + 1) / 2;
+
+			Workload variant = workload.with(taskId, task.withDuration(mid));
+			JobOrder feasibleOrder = (order.retime(variant) != null) ? order : null;
+			if (feasibleOrder == null)
+			{
+				Task[] schedule = newScheduler().makeSchedule(variant);
+				if (schedule != null)
+					feasibleOrder = new JobOrder(variant, schedule);
+			}
+
+			if (feasibleOrder != null)
+			{
+				order = feasibleOrder; // the hint for the next probe
+				slack.narrow(mid, high);
+			}
+			else
+				slack.narrow(low, mid - 1);
+		}
+	}
+
+	/**
+	 * A task's duration is limited by its release window, and by the time the
+	 * other tasks leave free over the hyperperiod.
+	 */
+	private static long upperBound(Task[] tasks, int taskId)
+	{
+		Task task = tasks[taskId];
+		long hyperperiod = Scheduler.hyperperiod(tasks);
+
+		long busy = 0;
+		for (int i = 0; i < tasks.length; ++i)
+		{
+			if (i != taskId)
+				busy += (hyperperiod / tasks[i].period()) * tasks[i].duration();
+		}
+		long free = (hyperperiod - busy) / (hyperperiod / task.period());
+
+		long result = Math.min(task.deadline() - task.delay(), free);
+		result = Math.max(result, task.duration());
+
+		return result;
+	}
+
+	/**
+	 * @return a table of the slack, one task per line.
+	 */
+	public static String report(Slack[] slacks)
+	{
+		StringBuffer sb = new StringBuffer();
+
+		int maxNameLen = 4;
+		for (Slack slack : slacks)
+			maxNameLen = Math.max(maxNameLen, slack.task().name().length());
+
+		String format = "%-" + maxNameLen + "s %10s %10s %10s %s%n";
+		sb.append(String.format(format, "Task", "Duration", "Max", "Slack", ""));
+		for (Slack slack : slacks)
+		{
+			sb.append(String.format(format, slack.task().name(), slack.task().duration(), slack.lowerBound(),
+					slack.slack(), slack.isExact() ? "" : "(at most " + slack.upperBound() + ")"));
+		}
+
+		String result = sb.toString();
+		return result;
+	}
+
+	/**
+	 * The bounds on the largest duration one task could have. The lower bound
+	 * is always known to be schedulable. The bounds are equal once the search
+	 * has finished.
+	 */
+	public static class Slack
+	{
+		private final Task m_task;
+		private long m_lowerBound;
+		private long m_upperBound;
+
+		Slack(Task task, long upperBound)
+		{
+			m_task = task;
+			m_lowerBound = task.duration();
+			m_upperBound = upperBound;
+		}
+
+		public Task task()
+		{
+			return m_task;
+		}
+
+		public synchronized long lowerBound()
+		{
+			return m_lowerBound;
+		}
+
+		public synchronized long upperBound()
+		{
+			return m_upperBound;
+		}
+
+		/**
+		 * @return how much the task's duration can certainly grow
+		 */
+		public synchronized long slack()
+		{
+			return m_lowerBound - m_task.duration();
+		}
+
+		public synchronized boolean isExact()
+		{
+			return m_lowerBound == m_upperBound;
+		}
+
+		synchronized void narrow(long lowerBound, long upperBound)
+		{
+			m_lowerBound = lowerBound;
+			m_upperBound = upperBound;
+		}
+
+		/**
+		 * @return a copy of the bounds as they are now.
+		 */
+		synchronized Slack snapshot()
+		{
+			Slack result = new Slack(m_task, m_upperBound);
+			result.m_lowerBound = m_lowerBound;
+
+			return result;
+		}
+
+		@Override
+		public synchronized String toString()
+		{
+			StringBuffer sb = new StringBuffer();
+
+			sb.append('{');
+			sb.append("name=");
+			sb.append(m_task.name());
+			sb.append(", duration=");
+			sb.append(m_task.duration());
+			sb.append(", lowerBound=");
+			sb.append(m_lowerBound);
+			sb.append(", upperBound=");
+			sb.append(m_upperBound);
+			sb.append('}');
+
+			String result = sb.toString();
+			return result;
+		}
+	}
+
+}
@@ -0,0 +1,118 @@
+package khopps.msse;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * ShardProtocol holds the message codes and encodings shared by the
+ * ShardedScheduler and its ShardWorker processes.
+ *
+ * @author khopps
+ *
+ */
+class ShardProtocol
+{
+	// coordinator to worker
+	static final int SHARD = 1; // followed by a Checkpoint prefix
+	static final int SPLIT = 2;
+	static final int STOP = 3;
+
+	// worker to coordinator
+	static final int FOUND = 10; // followed by a schedule
+	static final int EXHAUSTED = 11;
+	static final int DONATED = 12; // followed by a list of Checkpoint prefixes
+	static final int FAILED = 13; // followed by a description of the failure
+
+	private ShardProtocol()
+	{
+	}
+
+	static void writeWorkload(DataOutput out, Workload workload) throws IOException
+	{
+		Task[] tasks = workload.tasks();
+
+		out.writeUTF(workload.name());
+		out.writeInt(tasks.length);
+		for (Task task : tasks)
+		{
+			out.writeUTF(task.name());
+			out.writeLong(task.period());
+			out.writeLong(task.duration());
+			out.writeLong(task.delay());
+			out.writeLong(task.deadline());
+		}
+	}
+
+	static Workload readWorkload(DataInput in) throws IOException
+	{
+		Workload result = new Workload(in.readUTF());
+
+		int numTasks = in.readInt();
+		for (int i = 0; i < numTasks; ++i)
+		{
+			String name = in.readUTF();
+			long period = in.readLong();
+			long duration = in.readLong();
+			long delay = in.readLong();
+			long deadline = in.readLong();
+			result.add(new Task(name, period, duration, delay, deadline));
+		}
+
+		return result;
+	}
+
+	/*
+	 * A schedule is sent as the workload index of each task in it, with the
+	 * duration for Idle tasks.
+	 */
+	static void writeSchedule(DataOutput out, Workload workload, Task[] schedule) throws IOException
+	{
+		out.writeInt(schedule.length);
+		for (Task task : schedule)
+		{
+			out.writeInt(workload.indexOf(task));
+			out.writeLong(task.duration());
+		}
+	}
+
+	static Task[] readSchedule(DataInput in, Workload workload) throws IOException
+	{
+		Task[] tasks = workload.tasks();
+
+		Task[] result = new Task[in.readInt()];
+		for (int i = 0; i < result.length; ++i)
+		{
+			int taskId = in.readInt();
+			long duration = in.readLong();
+			if (taskId == Checkpoint.IDLE_ID)
+				result[i] = Task.newIdleTask(duration);
+			else if (taskId >= 0 && taskId < tasks.length)
+				result[i] = tasks[taskId];
+			else
+				throw new IOException("Schedule names unknown task " + taskId);
+		}
+
+		return result;
+	}
+
+	static void writePrefixes(DataOutput out, List<Checkpoint> prefixes) throws IOException
+	{
+		out.writeInt(prefixes.size());
+		for (Checkpoint prefix : prefixes)
+			prefix.write(out);
+	}
+
+	static List<Checkpoint> readPrefixes(DataInput in) throws IOException
+	{
+		int size = in.readInt();
+		List<Checkpoint> result = new ArrayList<Checkpoint>(size);
+		for (int i = 0; i < size; ++i)
+			result.add(Checkpoint.read(in));
+
+		return result;
+	}
+
+}
@@ -0,0 +1,206 @@
+package khopps.msse;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * ShardWorker is the process started by ShardedScheduler. It connects back to
+ * the coordinator over loopback, receives the workload, and then searches the
+ * subtrees it is sent one at a time. While it searches, the coordinator may
+ * ask it to give away part of its subtree to an idle worker.
+ *
+ * @author khopps
+ *
+ */
+public class ShardWorker implements SplitHandler
+{
+	private final Workload m_workload;
+	private final DataOutputStream m_out;
+	private final Scheduler m_scheduler = new Scheduler();
+	private boolean m_searching = false;
+	private boolean m_splitPending = false;
+
+	private ShardWorker(Workload workload, DataOutputStream out)
+	{
+		m_workload = workload;
+		m_out = out;
+		m_scheduler.setSplitHandler(this);
+	}
+
+	/**
+	 * @param args
+	 *            is the coordinator's port on the loopback interface.
+	 */
+	public static void main(String[] args) throws IOException
+	{
+		int port = Integer.parseInt(args[0]);
+
+		Socket socket = new Socket(InetAddress.getLoopbackAddress(), port);
+		socket.setTcpNoDelay(true);
+		DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+
+		Workload workload = ShardProtocol.readWorkload(in);
+		ShardWorker worker = new ShardWorker(workload, out);
+		try
+		{
+			worker.run(in);
+		}
+		catch (EOFException e)
+		{
+			// The coordinator has gone away; there is no one left to answer.
+		}
+		finally
+		{
+			socket.close();
+		}
+
+		/*
+		 * A search may still be running; it is no longer wanted.
+		 */
+		System.exit(0);
+	}
+
+	private void run(DataInputStream in) throws IOException
+	{
+		boolean done = false;
+		while (!done)
+		{
+			int message = in.readInt();
+			switch (message)
+			{
+			case ShardProtocol.SHARD:
+				search(Checkpoint.read(in));
+				break;
+
+			case ShardProtocol.SPLIT:
+				split();
+				break;
+
+			case ShardProtocol.STOP:
+				done = true;
+				break;
+
+			default:
+				throw new IOException("Unknown message " + message);
+			}
+		}
+	}
+
+	private synchronized void search(final Checkpoint prefix)
+	{
+		m_searching = true;
+
+		Thread thread = new Thread(new Runnable()
+		{
+			@Override
+			public void run()
+			{
+				try
+				{
+					Task[] schedule = m_scheduler.searchSubtree(m_workload, prefix);
+					finish(schedule);
+				}
+				catch (Throwable e)
+				{
+					fail(e);
+				}
+			}
+		}, "ShardWorker search");
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	/*
+	 * A split request that arrives after the search has finished is answered
+	 * with an empty donation, so the coordinator is never left waiting.
+	 */
+	private synchronized void split() throws IOException
+	{
+		if (m_searching)
+		{
+			m_splitPending = true;
+			m_scheduler.requestSplit();
+		}
+		else
+		{
+			send(ShardProtocol.DONATED, Collections.<Checkpoint> emptyList(), null);
+		}
+	}
+
+	@Override
+	public synchronized void donate(List<Checkpoint> prefixes)
+	{
+		m_splitPending = false;
+		sendOrExit(ShardProtocol.DONATED, prefixes, null);
+	}
+
+	private synchronized void finish(Task[] schedule)
+	{
+		m_searching = false;
+
+		if (m_splitPending)
+		{
+			m_splitPending = false;
+			sendOrExit(ShardProtocol.DONATED, Collections.<Checkpoint> emptyList(), null);
+		}
+
+		if (schedule == null)
+			sendOrExit(ShardProtocol.EXHAUSTED, null, null);
+		else
+			sendOrExit(ShardProtocol.FOUND, null, schedule);
+	}
+
+	/*
+	 * The coordinator is told why, if it can be, and the process exits so that
+	 * it sees the connection close even if it cannot.
+	 */
+	private synchronized void fail(Throwable failure)
+	{
+		try
+		{
+			m_out.writeInt(ShardProtocol.FAILED);
+			m_out.writeUTF(String.valueOf(failure));
+			m_out.flush();
+		}
+		catch (Throwable e)
+		{
+			// The exit below is all that is left.
+		}
+		finally
+		{
+			System.exit(1);
+		}
+	}
+
+	private void sendOrExit(int message, List<Checkpoint> prefixes, Task[] schedule)
+	{
+		try
+		{
+			send(message, prefixes, schedule);
+		}
+		catch (IOException e)
+		{
+			System.exit(1);
+		}
+	}
+
+	private void send(int message, List<Checkpoint> prefixes, Task[] schedule) throws IOException
+	{
+		m_out.writeInt(message);
+		if (prefixes != null)
+			ShardProtocol.writePrefixes(m_out, prefixes);
+		if (schedule != null)
+			ShardProtocol.writeSchedule(m_out, m_workload, schedule);
+		m_out.flush();
+	}
+
+}
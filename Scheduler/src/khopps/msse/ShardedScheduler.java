@@ -0,0 +1,365 @@
+package khopps.msse;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * ShardedScheduler searches for a schedule using several worker JVMs on this
+ * host. It enumerates the prefixes of the search tree down to a fixed depth
+ * and hands them out to ShardWorker processes over loopback sockets. When it
+ * runs out of prefixes, it asks busy workers to split off part of their
+ * subtrees for the idle ones.
+ *
+ * The first schedule found by any worker ends the search. The tasks cannot be
+ * scheduled only when every subtree has been exhausted, so the answer always
+ * agrees with Scheduler.makeSchedule(), although the schedule found may be a
+ * different one.
+ *
+ * @author khopps
+ *
+ */
+public class ShardedScheduler
+{
+	private static final int CONNECT_TIMEOUT = 30000; // milliseconds
+	private static final int LIVENESS_INTERVAL = 1000; // milliseconds between checks that the workers are alive
+
+	private final int m_numWorkers;
+	private final int m_prefixDepth;
+
+	/**
+	 * @param numWorkers
+	 *            is the number of worker processes to start.
+	 * @param prefixDepth
+	 *            is the number of decisions in the initial prefixes.
+	 */
+	public ShardedScheduler(int numWorkers, int prefixDepth)
+	{
+		if (numWorkers < 1)
+			throw new IllegalArgumentException("At least one worker is needed");
+
+		m_numWorkers = numWorkers;
+		m_prefixDepth = prefixDepth;
+	}
+
+	/**
+	 * This will make a schedule, if possible, for the given tasks.
+	 *
+	 * @param workload
+	 * @return the tasks, in order of their execution for the hyperperiod, or
+	 *         null if the tasks cannot be scheduled.
+	 * @throws IOException
+	 *             if the workers cannot be started or fail.
+	 */
+	public Task[] makeSchedule(Workload workload) throws IOException
+	{
+		if (workload.tasks().length == 0)
+			return null;
+
+		ArrayDeque<Checkpoint> pending = new ArrayDeque<Checkpoint>();
+		List<Checkpoint> prefixes = new ArrayList<Checkpoint>();
+		Task[] result = FrameScheduler.makeSchedule(workload);
+		if (result == null)
+			result = new Scheduler().makePrefixes(workload, m_prefixDepth, prefixes);
+		pending.addAll(prefixes);
+
+		if (result == null && !pending.isEmpty())
+		{
+			ServerSocket server = new ServerSocket(0, m_numWorkers, InetAddress.getLoopbackAddress());
+			List<Worker> workers = new ArrayList<Worker>();
+			try
+			{
+				server.setSoTimeout(CONNECT_TIMEOUT);
+				startWorkers(server, workload, workers);
+				result = coordinate(workload, workers, pending);
+			}
+			finally
+			{
+				stopWorkers(workers);
+				server.close();
+			}
+		}
+
+		return result;
+	}
+
+	private void startWorkers(ServerSocket server, Workload workload, List<Worker> workers) throws IOException
+	{
+		String java = System.getProperty("java.home") + File.separator + "bin" + File.separator + "java";
+		String classPath = System.getProperty("java.class.path");
+
+		BlockingQueue<Message> messages = new LinkedBlockingQueue<Message>();
+		for (int i = 0; i < m_numWorkers; ++i)
+		{
+			ProcessBuilder builder = new ProcessBuilder(java, "-cp", classPath, ShardWorker.class.getName(),
+					Integer.toString(server.getLocalPort()));
+			builder.redirectOutput(ProcessBuilder.Redirect.INHERIT);
+			builder.redirectError(ProcessBuilder.Redirect.INHERIT);
+			Process process = builder.start();
+
+			Socket socket = server.accept();
+			socket.setTcpNoDelay(true);
+			Worker worker = new Worker(i, process, socket, messages);
+			workers.add(worker);
+			ShardProtocol.writeWorkload(worker.m_out, workload);
+			worker.m_out.flush();
+			worker.startReader(workload);
+		}
+	}
+
+	/**
+	 * Hand out prefixes until a worker finds a schedule or every subtree has
+	 * been exhausted.
+	 */
+	private Task[] coordinate(Workload workload, List<Worker> workers, ArrayDeque<Checkpoint> pending)
+			throws IOException
+	{
+		BlockingQueue<Message> messages = workers.get(0).m_messages;
+		Task[] result = null;
+		boolean done = false;
+
+		while (!done)
+		{
+			for (Worker worker : workers)
+			{
+				if (!worker.m_busy && !pending.isEmpty())
+					worker.assign(pending.removeFirst());
+			}
+
+			boolean anyBusy = false;
+			boolean anyIdle = false;
+			for (Worker worker : workers)
+			{
+				anyBusy |= worker.m_busy;
+				anyIdle |= !worker.m_busy;
+			}
+
+			if (!anyBusy)
+			{
+				done = true; // every subtree has been exhausted
+			}
+			else
+			{
+				if (anyIdle)
+					requestSplit(workers);
+
+				Message message = take(messages, workers);
+				Worker worker = message.m_worker;
+				switch (message.m_type)
+				{
+				case ShardProtocol.FOUND:
+					result = message.m_schedule;
+					done = true;
+					break;
+
+				case ShardProtocol.EXHAUSTED:
+					worker.m_busy = false;
+					break;
+
+				case ShardProtocol.DONATED:
+					worker.m_splitPending = false;
+					if (message.m_prefixes.isEmpty())
+						worker.m_splittable = false;
+					pending.addAll(message.m_prefixes);
+					break;
+
+				default:
+					throw new IOException("Worker " + worker.m_index + " failed", message.m_failure);
+				}
+			}
+		}
+
+		return result;
+	}
+
+	/*
+	 * Ask one busy worker at a time for more work. A worker that had nothing to
+	 * give is not asked again until it has started on a new prefix.
+	 */
+	private void requestSplit(List<Worker> workers) throws IOException
+	{
+		Worker candidate = null;
+		for (Worker worker : workers)
+		{
+			if (worker.m_splitPending)
+				return;
+			if (candidate == null && worker.m_busy && worker.m_splittable)
+				candidate = worker;
+		}
+
+		if (candidate != null)
+			candidate.split();
+	}
+
+	/*
+	 * A worker that dies always closes its connection, but the wait does not
+	 * rely on that alone.
+	 */
+	private static Message take(BlockingQueue<Message> messages, List<Worker> workers) throws IOException
+	{
+		try
+		{
+			Message result = messages.poll(LIVENESS_INTERVAL, TimeUnit.MILLISECONDS);
+			while (result == null)
+			{
+				for (Worker worker : workers)
+				{
+					if (!worker.m_process.isAlive())
+						throw new IOException("Worker " + worker.m_index + " exited with status "
+								+ worker.m_process.exitValue());
+				}
+				result = messages.poll(LIVENESS_INTERVAL, TimeUnit.MILLISECONDS);
+			}
+
+			return result;
+		}
+		catch (InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted while waiting for workers", e);
+		}
+	}
+
+	private static void stopWorkers(List<Worker> workers)
+	{
+		for (Worker worker : workers)
+		{
+			try
+			{
+				worker.m_out.writeInt(ShardProtocol.STOP);
+				worker.m_out.flush();
+			}
+			catch (IOException e)
+			{
+				// It will be destroyed below.
+			}
+		}
+
+		for (Worker worker : workers)
+		{
+			try
+			{
+				if (!worker.m_process.waitFor(1, TimeUnit.SECONDS))
+					worker.m_process.destroyForcibly();
+				worker.m_socket.close();
+			}
+			catch (InterruptedException e)
+			{
+				worker.m_process.destroyForcibly();
+				Thread.currentThread().interrupt();
+			}
+			catch (IOException e)
+			{
+				// Nothing more can be done.
+			}
+		}
+	}
+
+	/**
+	 * The coordinator's view of one worker process.
+	 */
+	private static class Worker
+	{
+		private final int m_index;
+		private final Process m_process;
+		private final Socket m_socket;
+		private final DataInputStream m_in;
+		private final DataOutputStream m_out;
+		private final BlockingQueue<Message> m_messages;
+		private boolean m_busy = false;
+		private boolean m_splitPending = false;
+		private boolean m_splittable = false;
+
+		Worker(int index, Process process, Socket socket, BlockingQueue<Message> messages) throws IOException
+		{
+			m_index = index;
+			m_process = process;
+			m_socket = socket;
+			m_in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+			m_out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+			m_messages = messages;
+		}
+
+		void assign(Checkpoint prefix) throws IOException
+		{
+			m_out.writeInt(ShardProtocol.SHARD);
+			prefix.write(m_out);
+			m_out.flush();
+			m_busy = true;
+			m_splittable = true;
+		}
+
+		void split() throws IOException
+		{
+			m_out.writeInt(ShardProtocol.SPLIT);
+			m_out.flush();
+			m_splitPending = true;
+		}
+
+		/*
+		 * Each worker's replies are read on their own thread and queued for
+		 * the coordinator, which handles them one at a time.
+		 */
+		void startReader(final Workload workload)
+		{
+			Thread thread = new Thread(new Runnable()
+			{
+				@Override
+				public void run()
+				{
+					try
+					{
+						while (true)
+						{
+							int type = m_in.readInt();
+							Message message = new Message(Worker.this, type);
+							if (type == ShardProtocol.FOUND)
+								message.m_schedule = ShardProtocol.readSchedule(m_in, workload);
+							else if (type == ShardProtocol.DONATED)
+								message.m_prefixes = ShardProtocol.readPrefixes(m_in);
+							else if (type == ShardProtocol.FAILED)
+								message.m_failure = new IOException(m_in.readUTF());
+							m_messages.add(message);
+						}
+					}
+					catch (IOException e)
+					{
+						Message message = new Message(Worker.this, -1);
+						message.m_failure = e;
+						m_messages.add(message);
+					}
+				}
+			}, "ShardedScheduler worker " + m_index);
+			thread.setDaemon(true);
+			thread.start();
+		}
+	}
+
+	private static class Message
+	{
+		private final Worker m_worker;
+		private final int m_type;
+		private Task[] m_schedule = null;
+		private List<Checkpoint> m_prefixes = null;
+		private IOException m_failure = null;
+
+		Message(Worker worker, int type)
+		{
+			m_worker = worker;
+			m_type = type;
+		}
+	}
+
+}
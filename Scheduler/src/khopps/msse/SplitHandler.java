@@ -0,0 +1,23 @@
+package khopps.msse;
+
+import java.util.List;
+
+/**
+ * A SplitHandler receives the parts of a search that the Scheduler gives
+ * away after Scheduler.requestSplit().
+ * 
+ * @author khopps
+ * 
+ */
+public interface SplitHandler
+{
+
+	/**
+	 * This is called on the searching thread.
+	 * 
+	 * @param prefixes
+	 *            are the prefixes of the subtrees given away, possibly none.
+	 */
+	public void donate(List<Checkpoint> prefixes);
+
+}
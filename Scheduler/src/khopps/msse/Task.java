@@ -11,24 +11,24 @@ package khopps.msse;
 public class Task implements Comparable<Task>
 {
 	private final String m_name;
-	private final int m_period;
-	private final int m_delay;
-	private final int m_duration;
-	private final int m_deadline;
-	private int m_lastLaunch = -1;
+	private final long m_period;
+	private final long m_delay;
+	private final long m_duration;
+	private final long m_deadline;
+	private long m_lastLaunch = -1;
 	private static final String IDLE = "Idle"; // special name for Idle task.
 
-	public static Task newIdleTask(int duration)
+	public static Task newIdleTask(long duration)
 	{
-		return new Task(IDLE, duration, duration, 0, Integer.MAX_VALUE);
+		return new Task(IDLE, duration, duration, 0, Long.MAX_VALUE);
 	}
 
-	public Task(String name, int period, int duration)
+	public Task(String name, long period, long duration)
 	{
 		this(name, period, duration, 0, period);
 	}
 
-	public Task(String name, int period, int duration, int delay, int deadline)
+	public Task(String name, long period, long duration, long delay, long deadline)
 	{
 		m_name = name;
 		m_period = period;
@@ -39,6 +39,26 @@ public class Task implements Comparable<Task>
 		m_lastLaunch = -m_period; // to make nextDeadline work out ok
 	}
 
+	/**
+	 * @param duration
+	 * @return a new task like this one, but with a different duration. It does
+	 *         not share this task's launch time.
+	 */
+	public Task withDuration(long duration)
+	{
+		return new Task(m_name, m_period, duration, m_delay, m_deadline);
+	}
+
+	/**
+	 * @param deadline
+	 * @return a new task like this one, but with a different deadline. It does
+	 *         not share this task's launch time.
+	 */
+	public Task withDeadline(long deadline)
+	{
+		return new Task(m_name, m_period, m_duration, m_delay, deadline);
+	}
+
 	public boolean isIdleTask()
 	{
 		return m_name == IDLE;
@@ -49,22 +69,22 @@ public class Task implements Comparable<Task>
 		return m_name;
 	}
 
-	public int period()
+	public long period()
 	{
 		return m_period;
 	}
 
-	public int delay()
+	public long delay()
 	{
 		return m_delay;
 	}
 
-	public int duration()
+	public long duration()
 	{
 		return m_duration;
 	}
 
-	public int deadline()
+	public long deadline()
 	{
 		return m_deadline;
 	}
@@ -74,30 +94,43 @@ public class Task implements Comparable<Task>
 	 * 
 	 * @return
 	 */
-	public int nextDeadline()
+	public long nextDeadline()
 	{
-		int result = Integer.MAX_VALUE;
+		long result = Long.MAX_VALUE;
 		if (!isIdleTask())
 		{
-			int periodOfNextLaunch = (m_lastLaunch + m_period) / m_period;
+			long periodOfNextLaunch = (m_lastLaunch + m_period) / m_period;
 			result = periodOfNextLaunch * m_period + m_deadline;
 		}
 		return result;
 	}
 
+	public long lastLaunch()
+	{
+		return m_lastLaunch;
+	}
+
 	/**
 	 * This set the last launch time
 	 * 
 	 * @param now
 	 * @return the previous launch time
 	 */
-	public int launch(int now)
+	public long launch(long now)
 	{
-		int result = m_lastLaunch;
+		long result = m_lastLaunch;
 		m_lastLaunch = now;
 		return result;
 	}
 
+	/**
+	 * This forgets any launch, so that the task is ready for a new schedule.
+	 */
+	public void reset()
+	{
+		m_lastLaunch = -m_period;
+	}
+
 	/**
 	 * Calculate the time this task must wait before being launched. A result of
 	 * zero means it is eligible now.
@@ -105,13 +138,13 @@ public class Task implements Comparable<Task>
 	 * @param now
 	 * @return time the task must wait for being launched
 	 */
-	public int mustWait(int now)
+	public long mustWait(long now)
 	{
-		int periodStart = (now / m_period) * m_period;
-		int earliestLaunch = periodStart + m_delay;
+		long periodStart = (now / m_period) * m_period;
+		long earliestLaunch = periodStart + m_delay;
 		if (m_lastLaunch >= earliestLaunch)
 			earliestLaunch += m_period;
-		int result = Math.max(0, earliestLaunch - now);
+		long result = Math.max(0, earliestLaunch - now);
 		return result;
 	}
 
@@ -142,7 +175,7 @@ public class Task implements Comparable<Task>
 	@Override
 	public int compareTo(Task other)
 	{
-		return this.nextDeadline() - other.nextDeadline();
+		return Long.compare(this.nextDeadline(), other.nextDeadline());
 	}
 
 }
@@ -41,7 +41,7 @@ Schedule for Workload 1
 		System.out.println("Schedule for " + workload.name());
 
 		Task[] tasks = workload.tasks();
-		int hyperperiod = Scheduler.hyperperiod(tasks);
+		long hyperperiod = Scheduler.hyperperiod(tasks);
 
 		int maxNameLen = 0;
 		String[] lines = new String[tasks.length];
@@ -49,12 +49,12 @@ Schedule for Workload 1
 		{
 			Task task = tasks[i];
 			StringBuffer sb = new StringBuffer();
-			int linePos = 0;
+			long linePos = 0;
 			for (Task t : schedule)
 			{
 				char c = (t == task) ? 'x' : ' ';
-				int n = t.duration();
-				for (int j = 0; j < n; ++j)
+				long n = t.duration();
+				for (long j = 0; j < n; ++j)
 				{
 					if (linePos++ % 5 == 0)
 						sb.append('|');
@@ -78,8 +78,8 @@ Schedule for Workload 1
 		}
 
 		StringBuffer line = new StringBuffer();
-		int numLabels = (hyperperiod + 4) / 5 + 1;
-		for (int i = 0; i < numLabels; ++i)
+		long numLabels = (hyperperiod + 4) / 5 + 1;
+		for (long i = 0; i < numLabels; ++i)
 		{
 			line.append(String.format("%-6d", 5 * i));
 		}
@@ -98,12 +98,12 @@ Schedule for Workload 1
 	{
 		Task[] tasks = workload.tasks();
 
-		int hyperperiod = Scheduler.hyperperiod(tasks);
+		long hyperperiod = Scheduler.hyperperiod(tasks);
 
 		for (int i = 0; i < tasks.length; ++i)
 		{
 			Task task = tasks[i];
-			int nPeriods = hyperperiod / task.period();
+			long nPeriods = hyperperiod / task.period();
 			int numPeriods = (int)nPeriods;
 			assert numPeriods == nPeriods;
 			int numRunsInPeriod[] = new int[numPeriods];
@@ -114,13 +114,13 @@ Schedule for Workload 1
 			 * properly. It must run exactly one time in each of its periods,
 			 * and it must start and finish within its specified parameters.
 			 */
-			int now = 0;
+			long now = 0;
 			for (Task t : schedule)
 			{
 				if (t == task)
 				{
-					int periodIndex = now / t.period(); // which period is this?
-					int relativeNow = now % t.period(); // time within the
+					long periodIndex = now / t.period(); // which period is this?
+					long relativeNow = now % t.period(); // time within the
 														// period
 
 					if (relativeNow < t.delay())
@@ -0,0 +1,271 @@
+package khopps.msse;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * WhatIfEvaluator solves many variants of one workload, each differing from
+ * it in the durations or deadlines of a few tasks.
+ *
+ * Every workload is searched with inserted idle time, which is complete, and
+ * all of the searches share one FailedStates. A search node is known by its
+ * state, the time and the jobs finished, so the nodes that the variants have
+ * in common are shared however they were reached. A variant searches again
+ * down the path it has in common with the base, whose nodes did not fail, but
+ * each subtree the base or an earlier variant showed has no schedule is cut
+ * off at its root, if the variant's unfinished tasks are no easier there. So
+ * the search of a variant that only makes things harder resumes where it
+ * diverges from what is already known, and nothing that failed is searched
+ * twice.
+ *
+ * Before searching, a variant tries the frame-based schedule, and then each
+ * schedule found so far for a workload it relaxes, or for the base, with its
+ * jobs run again in the same order, each as early as its release allows. A
+ * variant that only shortens durations or lengthens deadlines of a feasible
+ * workload is always scheduled this way, without any search.
+ *
+ * So a variant is reported infeasible only if it has no schedule at all, and
+ * a feasible one always comes with a correct schedule, which may differ from
+ * the one Scheduler.makeSchedule() would find.
+ *
+ * Variants that make the same changes are solved once.
+ *
+ * @author khopps
+ *
+ */
+public class WhatIfEvaluator
+{
+	/**
+	 * @param base
+	 * @param variants
+	 * @return the outcome of each variant, in order.
+	 */
+	public Result[] evaluate(Workload base, List<Variant> variants)
+	{
+		FailedStates failedStates = new FailedStates();
+		List<Result> feasible = new ArrayList<Result>(); // their job orders are tried in turn
+
+		Result baseResult = new Result(base, search(base, failedStates));
+		if (baseResult.schedule() != null)
+			feasible.add(baseResult);
+
+		Result[] result = new Result[variants.size()];
+		Map<String, Result> solved = new HashMap<String, Result>();
+		for (int v = 0; v < result.length; ++v)
+		{
+			Variant variant = variants.get(v);
+			String key = variant.key(base);
+			result[v] = solved.get(key);
+			if (result[v] == null)
+			{
+				result[v] = solve(variant.apply(base), feasible, failedStates);
+				solved.put(key, result[v]);
+				if (result[v].schedule() != null)
+					feasible.add(result[v]);
+			}
+		}
+
+		return result;
+	}
+
+	private static Result solve(Workload workload, List<Result> feasible, FailedStates failedStates)
+	{
+		Task[] schedule = FrameScheduler.makeSchedule(workload);
+		for (int i = 0; schedule == null && i < feasible.size(); ++i)
+		{
+			Result other = feasible.get(i);
+			if (i == 0 || relaxes(workload, other.workload()))
+				schedule = new JobOrder(other.workload(), other.schedule()).retime(workload);
+		}
+		if (schedule == null)
+			schedule = search(workload, failedStates);
+
+		Result result = new Result(workload, schedule);
+		return result;
+	}
+
+	private static Task[] search(Workload workload, FailedStates failedStates)
+	{
+		Scheduler scheduler = new Scheduler();
+		scheduler.setInsertedIdleTime(true);
+		scheduler.setFailedStates(failedStates);
+
+		Task[] result = scheduler.search(workload);
+		return result;
+	}
+
+	/**
+	 * @return true if every task of the workload has the same period and
+	 *         delay as in the other, with no longer a duration and no earlier
+	 *         a deadline, so that any schedule for the other is one for it.
+	 */
+	private static boolean relaxes(Workload workload, Workload other)
+	{
+		Task[] tasks = workload.tasks();
+		Task[] others = other.tasks();
+
+		boolean result = tasks.length == others.length;
+		for (int i = 0; result && i < tasks.length; ++i)
+		{
+			result = tasks[i].period() == others[i].period() && tasks[i].delay() == others[i].delay()
+					&& tasks[i].duration() <= others[i].duration() && tasks[i].deadline() >= others[i].deadline();
+		}
+
+		return result;
+	}
+
+	/**
+	 * The changes that make one variant from the base workload. Tasks are
+	 * named by their index in the base workload.
+	 */
+	public static class Variant
+	{
+		private final TreeMap<Integer, Long> m_durations = new TreeMap<Integer, Long>();
+		private final TreeMap<Integer, Long> m_deadlines = new TreeMap<Integer, Long>();
+
+		public void setDuration(int taskId, long duration)
+		{
+			m_durations.put(taskId, duration);
+		}
+
+		public void setDeadline(int taskId, long deadline)
+		{
+			m_deadlines.put(taskId, deadline);
+		}
+
+		/**
+		 * @param base
+		 * @return a new workload with copies of the base tasks, changed as
+		 *         this variant says.
+		 * @throws IllegalArgumentException
+		 *             if a changed task is not in the base workload.
+		 */
+		public Workload apply(Workload base)
+		{
+			Task[] tasks = base.tasks();
+			if ((!m_durations.isEmpty() && m_durations.lastKey() >= tasks.length)
+					|| (!m_deadlines.isEmpty() && m_deadlines.lastKey() >= tasks.length))
+				throw new IllegalArgumentException("Variant changes a task that is not in " + base.name());
+
+			Workload result = new Workload(base.name());
+			for (int i = 0; i < tasks.length; ++i)
+			{
+				Task task = tasks[i];
+				result.add(new Task(task.name(), task.period(), duration(tasks, i), task.delay(), deadline(tasks, i)));
+			}
+
+			return result;
+		}
+
+		/**
+		 * @return a key that is the same for variants that make the same
+		 *         changes to the base workload.
+		 */
+		String key(Workload base)
+		{
+			Task[] tasks = base.tasks();
+			TreeMap<Integer, Long> changed = new TreeMap<Integer, Long>(m_durations);
+			changed.putAll(m_deadlines);
+
+			StringBuffer sb = new StringBuffer();
+			for (int i : changed.keySet())
+			{
+				if (i < tasks.length && duration(tasks, i) == tasks[i].duration()
+						&& deadline(tasks, i) == tasks[i].deadline())
+					continue;
+
+				sb.append(i);
+				sb.append(':');
+				sb.append(duration(tasks, i));
+				sb.append(':');
+				sb.append(deadline(tasks, i));
+				sb.append(';');
+			}
+
+			String result = sb.toString();
+			return result;
+		}
+
+		private long duration(Task[] tasks, int taskId)
+		{
+			Long duration = m_durations.get(taskId);
+			long result = (duration == null) ? tasks[taskId].duration() : duration.longValue();
+			return result;
+		}
+
+		private long deadline(Task[] tasks, int taskId)
+		{
+			Long deadline = m_deadlines.get(taskId);
+			long result = (deadline == null) ? tasks[taskId].deadline() : deadline.longValue();
+			return result;
+		}
+
+		@Override
+		public String toString()
+		{
+			StringBuffer sb = new StringBuffer();
+
+			sb.append('{');
+			sb.append("durations=");
+			sb.append(m_durations);
+			sb.append(", deadlines=");
+			sb.append(m_deadlines);
+			sb.append('}');
+
+			String result = sb.toString();
+			return result;
+		}
+	}
+
+	/**
+	 * The outcome of one variant.
+	 */
+	public static class Result
+	{
+		private final Workload m_workload;
+		private final Task[] m_schedule;
+
+		Result(Workload workload, Task[] schedule)
+		{
+			m_workload = workload;
+			m_schedule = schedule;
+		}
+
+		/**
+		 * @return the variant workload, whose tasks the schedule refers to.
+		 */
+		public Workload workload()
+		{
+			return m_workload;
+		}
+
+		/**
+		 * @return the tasks, in order of their execution for the hyperperiod,
+		 *         or null if the variant cannot be scheduled.
+		 */
+		public Task[] schedule()
+		{
+			return m_schedule;
+		}
+
+		@Override
+		public String toString()
+		{
+			StringBuffer sb = new StringBuffer();
+
+			sb.append('{');
+			sb.append("name=");
+			sb.append(m_workload.name());
+			sb.append(", feasible=");
+			sb.append(m_schedule != null);
+			sb.append('}');
+
+			String result = sb.toString();
+			return result;
+		}
+	}
+
+}
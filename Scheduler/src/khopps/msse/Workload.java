@@ -40,4 +40,96 @@ public class Workload
 
 		return m_cache;
 	}
+
+	/**
+	 * @return a new workload with copies of these tasks, which do not share
+	 *         launch times with these tasks.
+	 */
+	public Workload copy()
+	{
+		Workload result = new Workload(m_name);
+
+		for (Task task : tasks())
+			result.add(task.withDuration(task.duration()));
+
+		return result;
+	}
+
+	/**
+	 * @param index
+	 * @param replacement
+	 * @return a new workload with copies of these tasks, except that the task
+	 *         at the index is replaced. The copies do not share launch times
+	 *         with these tasks, so both workloads may be scheduled at once.
+	 */
+	public Workload with(int index, Task replacement)
+	{
+		Workload result = new Workload(m_name);
+
+		Task[] tasks = tasks();
+		for (int i = 0; i < tasks.length; ++i)
+		{
+			Task task = tasks[i];
+			if (i == index)
+				result.add(replacement);
+			else
+				result.add(task.withDuration(task.duration()));
+		}
+
+		return result;
+	}
+
+	/**
+	 * @param task
+	 * @return the index of the task within this workload, or -1 if it is not
+	 *         one of them.
+	 */
+	public int indexOf(Task task)
+	{
+		int result = -1;
+
+		Task[] tasks = tasks();
+		for (int i = 0; result < 0 && i < tasks.length; ++i)
+		{
+			if (tasks[i] == task)
+				result = i;
+		}
+
+		return result;
+	}
+
+	/**
+	 * The signature identifies the tasks of this workload, in order, by their
+	 * names and timing parameters. Two workloads with the same signature will
+	 * produce the same search.
+	 * 
+	 * @return a 64-bit FNV-1a hash of the tasks
+	 */
+	public long signature()
+	{
+		long result = 0xcbf29ce484222325L;
+
+		for (Task task : tasks())
+		{
+			String name = task.name();
+			for (int i = 0; i < name.length(); ++i)
+				result = hash(result, name.charAt(i));
+			result = hash(result, task.period());
+			result = hash(result, task.duration());
+			result = hash(result, task.delay());
+			result = hash(result, task.deadline());
+		}
+
+		return result;
+	}
+
+	private static long hash(long hash, long value)
+	{
+		for (int i = 0; i < 8; ++i)
+		{
+			hash ^= (value >>> (8 * i)) & 0xff;
+			hash *= 0x100000001b3L;
+		}
+		return hash;
+	}
 }